@@ -0,0 +1,81 @@
+package io.singularitynet.Client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of commands sent by the agent as one line - "actions [id] verb value; verb value; ..." - so that a
+ * policy's whole action vector takes effect in the same tick.<br>
+ * The id is optional; verbs are never numbers, so a leading number is always taken to be the id.
+ */
+public class ActionBatch
+{
+    /** Verb that starts a batch. */
+    public static final String COMMAND = "actions";
+
+    private final Long id;
+    private final List<String> commands;
+
+    private ActionBatch(Long id, List<String> commands)
+    {
+        this.id = id;
+        this.commands = commands;
+    }
+
+    /**
+     * @param command a command string as received from the agent.
+     * @return the batch, or null if the command is not a batch.
+     */
+    public static ActionBatch parse(String command)
+    {
+        String trimmed = command.stripLeading();
+        int verbLength = COMMAND.length();
+        if (!trimmed.regionMatches(true, 0, COMMAND, 0, verbLength))
+            return null;
+        if (trimmed.length() > verbLength && trimmed.charAt(verbLength) != ' ')
+            return null;    // Some other verb that happens to start with "actions".
+
+        String body = trimmed.substring(verbLength).trim();
+        Long id = null;
+        int space = body.indexOf(' ');
+        String first = (space == -1) ? body : body.substring(0, space);
+        try
+        {
+            id = Long.parseLong(first);
+            body = (space == -1) ? "" : body.substring(space + 1);
+        }
+        catch (NumberFormatException e)
+        {
+            // No id.
+        }
+
+        List<String> commands = new ArrayList<String>();
+        for (String part : body.split(";"))
+        {
+            String partCommand = part.trim();
+            if (!partCommand.isEmpty())
+                commands.add(partCommand);
+        }
+        return new ActionBatch(id, Collections.unmodifiableList(commands));
+    }
+
+    /** @return the lower-case verb of one of the batch's commands. */
+    public static String verbOf(String command)
+    {
+        int space = command.indexOf(' ');
+        return ((space == -1) ? command : command.substring(0, space)).toLowerCase();
+    }
+
+    /** @return the id the agent gave the batch, or null if it gave none. */
+    public Long getId()
+    {
+        return this.id;
+    }
+
+    /** @return the batch's commands, in the order they were sent, without empty ones. */
+    public List<String> getCommands()
+    {
+        return this.commands;
+    }
+}
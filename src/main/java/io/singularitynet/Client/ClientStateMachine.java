@@ -19,9 +19,14 @@
 
 package io.singularitynet.Client;
 
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
 import io.singularitynet.*;
+import io.singularitynet.MissionHandlerInterfaces.ICommandHandler;
 import io.singularitynet.MissionHandlerInterfaces.IVideoProducer;
 import io.singularitynet.MissionHandlerInterfaces.IWantToQuit;
 import io.singularitynet.MissionHandlerInterfaces.IWorldGenerator;
@@ -67,6 +72,7 @@ import javax.xml.stream.XMLStreamException;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.locks.Lock;
@@ -92,6 +98,8 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
     private static final String MISSING_MCP_PORT_ERROR = "no_mcp";
     private static final String INFO_MCP_PORT = "info_mcp";
     private static final String INFO_RESERVE_STATUS = "info_reservation";
+    // Writes tree-based observations into the stream the way JsonElement.toString would have.
+    private static final Gson OBSERVATION_GSON = new GsonBuilder().disableHtmlEscaping().serializeNulls().create();
     // Directly reference a log4j logger.
     private static final Logger LOGGER = LogManager.getLogger(ClientStateMachine.class);
     private MissionInit currentMissionInit = null; // The MissionInit object for the mission currently being loaded/run.
@@ -1664,6 +1672,11 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
         private int failedTCPObservationSendCount = 0;
         private boolean wantsToQuit = false; // We have decided our mission is at an end
         private List<VideoHook> videoHooks = new ArrayList<VideoHook>();
+        private FrameBundle frameBundle = null;
+        private List<CommandAndIPAddress> pendingCommands = new ArrayList<CommandAndIPAddress>(); // Reused by checkForControlCommand.
+        private JsonArray actionAcks = new JsonArray(); // Action batches applied since the last observation was sent.
+        private final Utf8ByteSink observationSink = new Utf8ByteSink(64 * 1024);   // Reused for every observation.
+        private final ByteBuffer[] observationParts = new ByteBuffer[1];
         private String quitCode = "";
         private TCPSocketChannel observationSocket = null;
         private TCPSocketChannel rewardSocket = null;
@@ -1674,6 +1687,8 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
 
         @Override
         public void onRenderTickEnd(WorldRenderContext ev) {
+            if (this.frameBundle != null)
+                this.frameBundle.postRender(ev);
             for(VideoHook hook: this.videoHooks){
                 hook.postRender(ev);
             }
@@ -1720,18 +1735,59 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
             if (currentMissionBehaviour().rewardProducer != null)
                 currentMissionBehaviour().rewardProducer.prepare(currentMissionInit());
 
-            for (IVideoProducer videoProducer : currentMissionBehaviour().videoProducers)
+            List<IVideoProducer> videoProducers = new ArrayList<IVideoProducer>(currentMissionBehaviour().videoProducers);
+            this.frameBundle = null;
+            if (currentMissionBehaviour().videoBundle != null)
+            {
+                // Bundled frames are always in the same order: video, depth, luminance, colour map.
+                videoProducers.sort(Comparator.comparing(IVideoProducer::getVideoType));
+                FrameBundle.normaliseReadbackBuffers(videoProducers);
+                this.frameBundle = new FrameBundle(currentMissionBehaviour().videoBundle.isSingleConnection(), this);
+            }
+            if (currentMissionInit().getClientAgentConnection() != null)
+                fixRenderSize(videoProducers);
+            for (IVideoProducer videoProducer : videoProducers)
             {
                 VideoHook hook = new VideoHook();
                 this.videoHooks.add(hook);
+                if (this.frameBundle != null)
+                    this.frameBundle.add(hook);
                 frameProduced();
                 hook.start(currentMissionInit(), videoProducer, this);
             }
 
+            // Show the window only once a second, and render only the frames the video hooks want:
+            ModSettings modSettings = currentMissionInit().getMission().getModSettings();
+            if (modSettings != null && Boolean.TRUE.equals(modSettings.isPrioritiseOffscreenRendering()))
+                TimeHelper.displayGranularityMs = 1000;
+
             // Make sure we have mouse control:
             ClientStateMachine.this.inputController.setInputType(VereyaModClient.InputType.AI);
         }
 
+        /**
+         * Render the world at one size for the whole mission, independently of the window size: the size of the
+         * first producer that asks for one. Producers asking for a different size get frames at this one.
+         */
+        private void fixRenderSize(List<IVideoProducer> videoProducers)
+        {
+            IVideoProducer sizer = null;
+            for (IVideoProducer videoProducer : videoProducers)
+            {
+                if (videoProducer.getWidth() <= 0 || videoProducer.getHeight() <= 0)
+                    continue;
+                if (sizer == null)
+                    sizer = videoProducer;
+                else if (videoProducer.getWidth() != sizer.getWidth() || videoProducer.getHeight() != sizer.getHeight())
+                    LOGGER.warn("The " + videoProducer.getVideoType() + " producer asks for " + videoProducer.getWidth() + "x"
+                            + videoProducer.getHeight() + " but the world is rendered once per frame, at the "
+                            + sizer.getVideoType() + " producer's " + sizer.getWidth() + "x" + sizer.getHeight()
+                            + " - use a Resize to get frames of a different size");
+            }
+            if (sizer != null)
+                FixedRenderSize.set(sizer.getWidth(), sizer.getHeight());
+        }
+
         protected void onMissionEnded(IState nextState, String errorReport)
         {
             // Tidy up our mission handlers:
@@ -1756,10 +1812,11 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
 
             for (VideoHook hook : this.videoHooks)
                 hook.stop(ClientStateMachine.this.missionEndedData);
+            this.frameBundle = null;
 
             // Return Minecraft speed to "normal":
             // TimeHelper.setMinecraftClientClockSpeed(20);
-            // TimeHelper.displayGranularityMs = 0;
+            TimeHelper.displayGranularityMs = 0;
 
             ClientStateMachine.this.missionQuitCode = this.quitCode;
             if (errorReport != null)
@@ -1911,33 +1968,59 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
         {
             TCPUtils.LogSection ls = new TCPUtils.LogSection("Sending data");
             //Minecraft.getMinecraft().mcProfiler.endStartSection("malmoSendData");
-            // Create the observation data:
-            String data = "";
+            // Create the observation data, streamed straight into UTF-8 bytes:
+            boolean haveObservation = false;
            // Minecraft.getMinecraft().mcProfiler.startSection("malmoGatherObservationJSON");
             if (currentMissionBehaviour() != null && currentMissionBehaviour().observationProducer != null)
             {
+                // Tree-based producers still build into this, so what they add to shared members gets merged.
                 JsonObject json = new JsonObject();
                 json.add(VereyaModClient.CONTROLLABLE, new JsonObject());
                 Profiler profiler = MinecraftClient.getInstance().getProfiler();
                 profiler.push("writeObservationsToJSON");
-                currentMissionBehaviour().observationProducer.writeObservationsToJSON(json, currentMissionInit());
-                VereyaModClient.InputType inptype = ClientStateMachine.this.inputController.getInputType();
-                json.add("input_type", new JsonPrimitive(inptype.name()));
-                json.add("isPaused", new JsonPrimitive(MinecraftClient.getInstance().isPaused()));
-                data = json.toString();
+                this.observationSink.reset();
+                try
+                {
+                    JsonWriter writer = new JsonWriter(this.observationSink);
+                    writer.setLenient(true);    // As JsonElement.toString is, so that NaN stats still go out.
+                    writer.beginObject();
+                    currentMissionBehaviour().observationProducer.writeObservations(writer, json, currentMissionInit());
+                    for (Map.Entry<String, JsonElement> member : json.entrySet())
+                    {
+                        writer.name(member.getKey());
+                        OBSERVATION_GSON.toJson(member.getValue(), writer);
+                    }
+                    VereyaModClient.InputType inptype = ClientStateMachine.this.inputController.getInputType();
+                    writer.name("input_type").value(inptype.name());
+                    writer.name("isPaused").value(MinecraftClient.getInstance().isPaused());
+                    if (!this.actionAcks.isEmpty())
+                    {
+                        writer.name("action_acks");
+                        OBSERVATION_GSON.toJson(this.actionAcks, writer);
+                        this.actionAcks = new JsonArray();
+                    }
+                    writer.endObject();
+                    writer.flush();
+                    haveObservation = true;
+                }
+                catch (IOException e)
+                {
+                    LOGGER.error("Failed to write observations", e);
+                }
                 profiler.pop();
             }
             // Minecraft.getMinecraft().mcProfiler.endStartSection("malmoSendTCPObservations");
 
             ClientAgentConnection cac = currentMissionInit().getClientAgentConnection();
 
-            if (data != null && data.length() > 2 && cac != null) // An empty json string will be "{}" (length 2) - don't send these.
+            if (haveObservation && this.observationSink.size() > 2 && cac != null) // An empty json string will be "{}" (length 2) - don't send these.
             {
                 if (AddressHelper.getMissionControlPort() == 0) {
 
                 } else {
-                    // Bung the whole shebang off via TCP:
-                    if (this.observationSocket.sendTCPString(data)) {
+                    // Bung the whole shebang off via TCP, straight from the sink:
+                    this.observationParts[0] = this.observationSink.toByteBuffer();
+                    if (this.observationSocket.sendTCPBytes(this.observationParts, this.observationSink.size())) {
                         this.failedTCPObservationSendCount = 0;
                     } else {
                         // Failed to send observation message.
@@ -1945,6 +2028,7 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
                         TCPUtils.Log(Level.WARNING, "Observation signal delivery failure count at " + this.failedTCPObservationSendCount);
                         ClientStateMachine.this.getScreenHelper().addFragment("ERROR: Agent missed observation signal", ScreenHelper.TextCategory.TXT_CLIENT_WARNING, 5000);
                     }
+                    this.observationParts[0] = null;
                 }
             }
 
@@ -2008,35 +2092,129 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
         private void checkForControlCommand()
         {
             // Minecraft.getMinecraft().mcProfiler.endStartSection("malmoCommandHandling");
-            String command;
-            boolean quitHandlerFired = false;
+            // Take everything that has arrived since the last tick in one go - after a stall on the agent side
+            // there can be thousands of commands waiting.
+            if (ClientStateMachine.this.controlInputPoller.drainCommands(this.pendingCommands) == 0)
+                return;
             IWantToQuit quitHandler = (currentMissionBehaviour() != null) ? currentMissionBehaviour().quitProducer : null;
-            command = ClientStateMachine.this.controlInputPoller.getCommand();
-
-            while (command != null && command.length() > 0 && !quitHandlerFired)
-            {
-                // TCPUtils.Log(Level.INFO, "Act on " + command);
-                // Pass the command to our various control overrides:
-                // Minecraft.getMinecraft().mcProfiler.startSection("malmoCommandAct");
-                if (command != null) LOGGER.debug("Command " + command);
-                boolean handled = handleCommand(command);
-                //trigger the reward for sending a command
-                if (handled && currentMissionBehaviour().rewardProducer != null){
-                    currentMissionBehaviour().rewardProducer.trigger(CommandBase.class);
+            boolean handled = false;
+            try
+            {
+                for (CommandAndIPAddress comip : this.pendingCommands)
+                {
+                    String command = comip.command;
+                    if (command == null || command.length() == 0)
+                        continue;
+                    // If this isn't the first command this tick (commands came in faster than one per client tick),
+                    // then we should check our quit producer before deciding whether to execute it.
+                    // Minecraft.getMinecraft().mcProfiler.endStartSection("malmoCommandRecheckQuitHandlers");
+                    if (handled && quitHandler != null && quitHandler.doIWantToQuit(currentMissionInit()))
+                        break;  // The rest are dropped; the queue is cleared at the end of the mission anyway.
+
+                    // TCPUtils.Log(Level.INFO, "Act on " + command);
+                    // Pass the command to our various control overrides:
+                    // Minecraft.getMinecraft().mcProfiler.startSection("malmoCommandAct");
+                    LOGGER.debug("Command " + command);
+                    ActionBatch batch = ActionBatch.parse(command);
+                    handled = (batch != null) ? handleActionBatch(batch) : applyCommand(command);
+                    // Minecraft.getMinecraft().mcProfiler.endSection();
                 }
-                if ((command != null) && !handled){
-                    LOGGER.warn("Command " + command + " not handled");
+            }
+            finally
+            {
+                this.pendingCommands.clear();
+            }
+        }
+
+        /**
+         * Handle a single command, triggering the reward for sending a command if it was handled.
+         *
+         * @param command the command string to be handled.
+         * @return true if the command was handled.
+         */
+        private boolean applyCommand(String command)
+        {
+            boolean handled = handleCommand(command);
+            //trigger the reward for sending a command
+            if (handled && currentMissionBehaviour().rewardProducer != null){
+                currentMissionBehaviour().rewardProducer.trigger(CommandBase.class);
+            }
+            if (!handled){
+                LOGGER.warn("Command " + command + " not handled");
+            }
+            return handled;
+        }
+
+        /**
+         * Apply a batch of commands sent as one line (see ActionBatch), so that a policy's whole action vector takes
+         * effect in the same tick.<br>
+         * The batch arrives as a single queued command, so it can't be split across ticks, and the quit producer is
+         * not consulted between its parts. Before anything is applied, every part's verb is checked against the verbs
+         * the command handlers accept, and the whole batch is refused if one is unknown. A part can still fail once
+         * applied (eg a bad value); the others are applied regardless, and the ack lists the parts that failed.
+         * The ack - the batch's id, the world tick it was applied on, how many of its commands were handled, and the
+         * indices of any that were not - goes out in the "action_acks" array of the next observation, so batches
+         * are refused when there is no observation producer to carry it.
+         *
+         * @return true if the batch held at least one command, and every one of them was handled.
+         */
+        private boolean handleActionBatch(ActionBatch batch)
+        {
+            if (currentMissionBehaviour().observationProducer == null)
+            {
+                LOGGER.warn("Action batch refused - its acknowledgement needs an observation producer to carry it");
+                return false;
+            }
+            JsonObject ack = new JsonObject();
+            if (batch.getId() != null)
+                ack.addProperty("id", batch.getId());
+            ack.addProperty("tick", VideoHook.currentWorldTick());
+            ack.addProperty("commands", batch.getCommands().size());
+
+            String unknownVerb = unknownVerbIn(batch);
+            JsonArray unhandled = new JsonArray();
+            if (unknownVerb != null)
+            {
+                LOGGER.warn("Action batch refused - no handler for \"" + unknownVerb + "\"");
+                for (int i = 0; i < batch.getCommands().size(); i++)
+                    unhandled.add(i);
+            }
+            else
+            {
+                for (int i = 0; i < batch.getCommands().size(); i++)
+                {
+                    if (!applyCommand(batch.getCommands().get(i)))
+                        unhandled.add(i);
                 }
-                // Get the next command:
-                command = ClientStateMachine.this.controlInputPoller.getCommand();
-                // If there *is* another command (commands came in faster than one per client tick),
-                // then we should check our quit producer before deciding whether to execute it.
-                // Minecraft.getMinecraft().mcProfiler.endStartSection("malmoCommandRecheckQuitHandlers");
-                if (command != null && command.length() > 0 && handled)
-                    quitHandlerFired = (quitHandler != null && quitHandler.doIWantToQuit(currentMissionInit()));
+            }
+            ack.addProperty("handled", batch.getCommands().size() - unhandled.size());
+            if (!unhandled.isEmpty())
+                ack.add("unhandled", unhandled);
+            this.actionAcks.add(ack);
+            return !batch.getCommands().isEmpty() && unhandled.isEmpty();
+        }
 
-                // Minecraft.getMinecraft().mcProfiler.endSection();
+        /** @return the first verb in the batch that no command handler accepts, or null if they all have one. */
+        private String unknownVerbIn(ActionBatch batch)
+        {
+            ICommandHandler commandHandler = currentMissionBehaviour().commandHandler;
+            Collection<String> verbs = (commandHandler != null) ? commandHandler.getVerbs() : List.of();
+            Set<String> known = null;
+            if (verbs != null)
+            {
+                known = new HashSet<String>();
+                for (String verb : verbs)
+                    known.add(verb.toLowerCase());
+            }
+            for (String command : batch.getCommands())
+            {
+                String verb = ActionBatch.verbOf(command);
+                if (verb.equalsIgnoreCase(VideoHook.REQUEST_FRAME_COMMAND))
+                    continue;
+                if (known != null && !known.contains(verb))
+                    return verb;    // A handler taking any verb (getVerbs() null) can't be checked in advance.
             }
+            return null;
         }
 
         /**
@@ -2047,13 +2225,44 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
          */
         private boolean handleCommand(String command)
         {
+            // Split once here; the handlers take the verb and parameter as they are.
+            String[] parts = command.trim().split(" ", 2);
+            String verb = parts[0].toLowerCase();
+            String parameter = parts.length > 1 ? parts[1] : "";
+            if (verb.equalsIgnoreCase(VideoHook.REQUEST_FRAME_COMMAND))
+                return requestFrame(parameter.trim());
+
             if (currentMissionBehaviour() != null && currentMissionBehaviour().commandHandler != null)
             {
-                return currentMissionBehaviour().commandHandler.execute(command, currentMissionInit());
+                return currentMissionBehaviour().commandHandler.execute(verb, parameter, currentMissionInit());
             }
             return false;
         }
 
+        /**
+         * Pass an agent's request for a frame to the video hooks using the on-demand capture policy.
+         *
+         * A request for a bundled video type goes to the bundle's primary hook, and so requests a frame from the whole bundle.
+         *
+         * @param videoType the video type to request a frame of (eg "colour_map"), or empty for all of them.
+         * @return true if a video hook of the requested type exists.
+         */
+        private boolean requestFrame(String videoType)
+        {
+            // A set, so a bundle is only asked once however many of its hooks match.
+            Set<VideoHook> requested = new LinkedHashSet<VideoHook>();
+            for (VideoHook hook : this.videoHooks)
+            {
+                IVideoProducer.VideoType type = hook.getVideoType();
+                if (type == null || (!videoType.isEmpty() && !type.name().equalsIgnoreCase(videoType)))
+                    continue;
+                requested.add(hook.getCaptureHook());
+            }
+            for (VideoHook hook : requested)
+                hook.requestFrame();
+            return !requested.isEmpty();
+        }
+
         @Override
         public void onMessage(VereyaMessageType messageType, Map<String, String> data)
         {
@@ -2091,6 +2300,8 @@ public class ClientStateMachine extends StateMachine implements IVereyaMessageLi
         public void cleanup()
         {
             super.cleanup();
+            // Go back to rendering at the window's size.
+            FixedRenderSize.clear();
             SidesMessageHandler.server2client.deregisterForMessage(this, VereyaMessageType.SERVER_STOPAGENTS);
             SidesMessageHandler.server2client.deregisterForMessage(this, VereyaMessageType.SERVER_GO);
         }
@@ -0,0 +1,152 @@
+package io.singularitynet.Client;
+
+import io.singularitynet.MissionHandlerInterfaces.IVideoProducer;
+import io.singularitynet.utils.AddressHelper;
+import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Captures a set of video hooks from the same rendered frame.
+ * <p>
+ * The hooks in a bundle no longer decide for themselves when to capture: the first hook's capture
+ * policy is applied once per rendered frame, and only to frames every producer has a new image for.
+ * Every hook then reads its producer back, and all of the frames carry the same sequence number and
+ * world tick. With a single connection the frames go out as one multi-part message on the first
+ * hook's socket: a 4-byte big-endian part count, then each frame framed as usual.
+ * <p>
+ * Asynchronous readback delivers a frame as many captures late as it has buffers, so the producers in a
+ * bundle must all use the same number of readback buffers - see normaliseReadbackBuffers.
+ */
+public class FrameBundle
+{
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final boolean singleConnection;
+    private final VideoProducedObserver observer;
+    private final List<VideoHook> hooks = new ArrayList<VideoHook>();
+    private final ByteBuffer partCount = ByteBuffer.allocateDirect(4).order(ByteOrder.BIG_ENDIAN);
+    private ByteBuffer[] parts = new ByteBuffer[1];
+    private long framesCaptured = 0;
+
+    public FrameBundle(boolean singleConnection, VideoProducedObserver observer)
+    {
+        this.singleConnection = singleConnection;
+        this.observer = observer;
+    }
+
+    /** Add a hook to the bundle; call before the hook is started. The first hook added is the primary one. */
+    public void add(VideoHook hook)
+    {
+        this.hooks.add(hook);
+        hook.setBundle(this);
+        // Count, then length, header and pixels for each frame.
+        this.parts = new ByteBuffer[1 + 3 * this.hooks.size()];
+    }
+
+    /**
+     * Give every producer the deepest readback of any of them, so that each delivers the frame captured the same
+     * number of frames ago and the parts of a bundle all come from one rendered frame. Call before the producers are prepared.
+     * @return the number of readback buffers the producers now share.
+     */
+    public static int normaliseReadbackBuffers(List<? extends IVideoProducer> producers)
+    {
+        int deepest = 0;
+        for (IVideoProducer producer : producers)
+            deepest = Math.max(deepest, producer.getReadbackBuffers());
+        for (IVideoProducer producer : producers)
+        {
+            if (producer.getReadbackBuffers() == deepest)
+                continue;
+            LOGGER.warn("Bundled " + producer.getVideoType() + " producer asked for " + producer.getReadbackBuffers()
+                    + " readback buffers; using " + deepest + " to keep the bundle in step");
+            producer.setReadbackBuffers(deepest);
+            if (producer.getReadbackBuffers() != deepest)
+                throw new IllegalArgumentException("Cannot bundle " + producer.getVideoType() + " frames with "
+                        + deepest + " readback buffers - set the same readbackBuffers on every producer");
+        }
+        return deepest;
+    }
+
+    boolean isSingleConnection()
+    {
+        return this.singleConnection;
+    }
+
+    VideoHook getPrimary()
+    {
+        return this.hooks.get(0);
+    }
+
+    boolean isPrimary(VideoHook hook)
+    {
+        return !this.hooks.isEmpty() && this.hooks.get(0) == hook;
+    }
+
+    /**
+     * Called when the world has been rendered but not yet the GUI or player hand.
+     */
+    public void postRender(WorldRenderContext event)
+    {
+        if (this.hooks.isEmpty())
+            return;
+        VideoHook primary = this.hooks.get(0);
+        long time_now = System.nanoTime();
+
+        if (this.observer != null)
+            this.observer.frameProduced();
+
+        // Every producer is asked on every frame, so none of them misses a frame it rendered.
+        boolean ready = true;
+        for (VideoHook hook : this.hooks)
+            ready &= hook.isNewFrameReady();
+        if (!ready || AddressHelper.getMissionControlPort() == 0)
+            return;
+        // Frames written to shared memory go into each stream's own ring, so are never sent as one message.
+        boolean oneMessage = this.singleConnection && !primary.usesSharedMemory();
+        if (oneMessage && primary.isRetryPending(time_now))
+            return;
+
+        long worldTick = VideoHook.currentWorldTick();
+        if (!primary.shouldCapture(time_now, worldTick))
+            return;
+        long sequence = this.framesCaptured++;
+
+        if (!oneMessage)
+        {
+            // A hook that can't send this frame still reads it back, so every stream stays on the same frame.
+            for (VideoHook hook : this.hooks)
+                hook.captureAndSend(time_now, worldTick, sequence);
+            return;
+        }
+
+        // Read every producer back even if one is not ready, so asynchronous readbacks stay in step.
+        boolean allReady = true;
+        for (VideoHook hook : this.hooks)
+            allReady &= hook.captureForBundle(worldTick, sequence);
+        if (!allReady)
+            return;
+
+        int length = 4;
+        int index = 1;
+        for (VideoHook hook : this.hooks)
+        {
+            length += hook.addBundleParts(this.parts, index);
+            index += 3;
+        }
+        this.partCount.clear();
+        this.partCount.putInt(this.hooks.size());
+        this.partCount.flip();
+        this.parts[0] = this.partCount;
+        if (primary.sendBundle(this.parts, length, time_now))
+        {
+            for (VideoHook hook : this.hooks)
+                hook.frameSent();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package io.singularitynet.Client;
+
+/**
+ * Pose and camera matrices of the last few captured frames, so that a frame delivered late by an asynchronous
+ * readback can still be described by the pose it was rendered with.<br>
+ * The producer's readback ring advances on every readback, so every recorded capture must be followed by exactly
+ * one delivery - including captures whose frame is then dropped rather than sent - or the frames that follow
+ * are described by the wrong entries.
+ */
+class FrameHistory
+{
+    /** Number of captured frames remembered. */
+    static final int FRAMES = 9;
+
+    /** Most captures a delivered frame can lag behind and still be found. */
+    static final int MAX_LATENCY = FRAMES - 1;
+
+    /** Pose and camera matrices recorded at the time a frame was captured. */
+    static class FrameState
+    {
+        long sequence;
+        long worldTick;
+        float x, y, z, yaw, pitch;
+        final float[] projection = new float[16];
+        final float[] modelview = new float[16];
+    }
+
+    private final FrameState[] states = new FrameState[FRAMES];
+    private long captures = 0;
+
+    FrameHistory()
+    {
+        for (int i = 0; i < FRAMES; i++)
+            this.states[i] = new FrameState();
+    }
+
+    /** Forget every capture, eg when a mission starts. */
+    void reset()
+    {
+        this.captures = 0;
+    }
+
+    /** @return the number of frames read back so far. */
+    long getCaptures()
+    {
+        return this.captures;
+    }
+
+    /** @return the entry to fill in for the frame about to be read back. */
+    FrameState record()
+    {
+        return this.states[(int) (this.captures % FRAMES)];
+    }
+
+    /**
+     * Account for one readback.
+     * @param latency how many captures ago the delivered frame was recorded, at most MAX_LATENCY.
+     * @return the entry recorded for the delivered frame.
+     */
+    FrameState deliver(int latency)
+    {
+        FrameState delivered = this.states[(int) Math.floorMod(this.captures - latency, (long) FRAMES)];
+        this.captures++;
+        return delivered;
+    }
+}
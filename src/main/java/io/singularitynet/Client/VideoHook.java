@@ -4,29 +4,42 @@ package io.singularitynet.Client;
 
 import io.singularitynet.MissionHandlerInterfaces.IVideoProducer;
 import io.singularitynet.projectmalmo.ClientAgentConnection;
+import io.singularitynet.projectmalmo.FrameCapturePolicy;
+import io.singularitynet.projectmalmo.FrameDropPolicy;
+import io.singularitynet.projectmalmo.FrameHeaderFormat;
+import io.singularitynet.projectmalmo.FrameTransport;
+import io.singularitynet.projectmalmo.FrameTransportType;
 import io.singularitynet.projectmalmo.MissionDiagnostics;
 import io.singularitynet.projectmalmo.MissionInit;
 import io.singularitynet.utils.AddressHelper;
+import io.singularitynet.utils.SharedFrameRing;
 import io.singularitynet.utils.TCPSocketChannel;
+import io.singularitynet.utils.Utf8ByteSink;
 import net.fabricmc.fabric.api.client.rendering.v1.WorldRenderContext;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gl.Framebuffer;
 import net.minecraft.client.network.ClientPlayerEntity;
-import net.minecraft.client.util.Window;
+import net.minecraft.client.world.ClientWorld;
 import net.minecraft.util.math.Vec3d;
-import org.apache.logging.log4j.LogManager;
 import org.lwjgl.BufferUtils;
 import org.json.*;
 
 import static org.lwjgl.opengl.GL11.*;
 
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 
 /**
@@ -52,10 +65,16 @@ public class VideoHook {
      */
     private static final long RETRY_GAP_NS = 5000000000L;
 
+    /**
+     * Longest the render thread waits for a free send slot under the block drop policy, unless the producer's
+     * target frame rate gives a frame interval to wait instead - about one frame at 20fps. Value is in nanoseconds.
+     */
+    private static final long BLOCK_WAIT_NS = 50000000L;
+
     /**
      * The time in nanoseconds after which we should try sending again.
      */
-    private long retry_time_ns = 0;
+    private volatile long retry_time_ns = 0;
 
 
     private Framebuffer framebuffer = MinecraftClient.getInstance().getFramebuffer();
@@ -64,7 +83,24 @@ public class VideoHook {
      */
     private boolean isRunning = false;
 
-    private String tictac = "tic";
+    /**
+     * Hooks that are currently running, asked before each client frame whether they want it rendered.
+     */
+    private static final List<VideoHook> runningHooks = new CopyOnWriteArrayList<VideoHook>();
+
+    /**
+     * Command an agent sends to ask for a frame from producers using the on-demand capture policy.
+     */
+    public static final String REQUEST_FRAME_COMMAND = "requestFrame";
+
+    private FrameCapturePolicy capturePolicy = FrameCapturePolicy.EVERY_NTH_FRAME;
+    private int captureInterval = 2;
+    private long captureIntervalNs = 0;
+    private long framesRendered = 0;
+    private long nextCaptureNs = 0;
+    private long lastCaptureTick = -1;
+    /** Frames the agent has asked for but which have not been captured yet (on-demand policy). */
+    private final AtomicInteger framesRequested = new AtomicInteger();
 
     /**
      * MissionInit object for passing to the IVideoProducer.
@@ -76,30 +112,75 @@ public class VideoHook {
      */
     private IVideoProducer videoProducer;
 
+    /**
+     * Memory-mapped ring the frames are written to for a same-host agent, or null to send them over TCP.
+     */
+    private SharedFrameRing frameRing = null;
+    private final ByteBuffer notification = ByteBuffer.allocateDirect(8).order(ByteOrder.BIG_ENDIAN);
+    private final ByteBuffer[] notificationParts = { this.notification };
+
+    /**
+     * Bundle this hook is captured with, or null if it captures and sends on its own.
+     */
+    private FrameBundle bundle = null;
+
     /**
      * Public count of consecutive TCP failures - used to terminate a mission if nothing is listening
      */
-    public int failedTCPSendCount = 0;
+    public volatile int failedTCPSendCount = 0;
 
     /**
      * Object which maintains our connection to the agent.
      */
-    private TCPSocketChannel connection = null;
+    private volatile TCPSocketChannel connection = null;
 
-    private int renderWidth;
-    private int renderHeight;
-    private int renderedWidth = 0;
-    private int renderedHeight = 0;
+    /**
+     * Background sender draining captured frames to the agent; null if frames are sent on the render thread.
+     */
+    private FrameSender sender = null;
 
     private int texChannels = 4;
+    private int bytesPerChannel = 1;
+
+    private FrameHeaderFormat headerFormat = FrameHeaderFormat.JSON;
 
-    ByteBuffer buffer;
+    /** "VRYF" when the little-endian int is read back as bytes. */
+    private static final int BINARY_HEADER_MAGIC = 0x46595256;
+    private static final short BINARY_HEADER_VERSION = 3;
+    private static final int BINARY_HEADER_BYTES = 196;
+
+    // Slot used when frames are sent synchronously from the render thread.
+    private FrameSlot syncSlot;
     // check also Malmo/src/TimestampedVideoFrame.h
 
+    private final FrameHistory frameHistory = new FrameHistory();
+    // Read back into when a frame is captured but not sent, so the producer's readback ring keeps pace.
+    private FrameSlot discardSlot;
+
+    /** One captured frame: the pixel payload plus the header describing it. */
+    private static class FrameSlot
+    {
+        ByteBuffer pixels;
+        ByteBuffer header;
+        int frameBytes;
+        // Everything sent is direct, so the socket channel writes it without copying it first.
+        final ByteBuffer headerLength = ByteBuffer.allocateDirect(4).order(ByteOrder.BIG_ENDIAN);
+        final Utf8ByteSink jsonHeader = new Utf8ByteSink(1024);
+        // Fixed struct plus any metadata trailer; grown when a frame's metadata doesn't fit.
+        ByteBuffer binaryHeader = ByteBuffer.allocateDirect(BINARY_HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        final ByteBuffer[] parts = new ByteBuffer[3];
+
+        FrameSlot(int capacity)
+        {
+            this.pixels = BufferUtils.createByteBuffer(capacity);
+        }
+    }
+
     // For diagnostic purposes:
     private long timeOfFirstFrame = 0;
     private long timeOfLastFrame = 0;
     private long framesSent = 0;
+    private final AtomicInteger framesDropped = new AtomicInteger();
     private VideoProducedObserver observer;
 
     /**
@@ -116,22 +197,33 @@ public class VideoHook {
         this.missionInit = missionInit;
         this.videoProducer = videoProducer;
         this.observer = observer;
+        this.headerFormat = (videoProducer.getHeaderFormat() != null) ? videoProducer.getHeaderFormat() : FrameHeaderFormat.JSON;
+        this.capturePolicy = (videoProducer.getCapturePolicy() != null) ? videoProducer.getCapturePolicy() : FrameCapturePolicy.EVERY_NTH_FRAME;
+        this.captureInterval = Math.max(1, videoProducer.getCaptureInterval());
+        double targetFps = (videoProducer.getTargetFps() != null) ? videoProducer.getTargetFps().doubleValue() : 0;
+        this.captureIntervalNs = (targetFps > 0) ? (long) (1000000000.0 / targetFps) : 0;
+        this.framesRendered = 0;
+        this.nextCaptureNs = 0;
+        this.lastCaptureTick = -1;
+        this.framesRequested.set(0);
         // Choose channel count per video type and size the buffer for producer dims.
         switch (videoProducer.getVideoType()) {
             case COLOUR_MAP:
                 this.texChannels = 3; // BGR for segmentation
                 break;
+            case DEPTH_MAP:
+            case LUMINANCE:
+                this.texChannels = 1; // single channel - depth or grayscale
+                break;
             default:
                 this.texChannels = 4; // BGRA for standard video
                 break;
         }
         int initW = Math.max(1, videoProducer.getWidth());
         int initH = Math.max(1, videoProducer.getHeight());
-        this.buffer = BufferUtils.createByteBuffer(initW * initH * this.texChannels);
-        this.renderWidth = videoProducer.getWidth();
-        this.renderHeight = videoProducer.getHeight();
-        resizeIfNeeded();
-        // Display.setResizable(false); // prevent the user from resizing using the window borders
+        this.bytesPerChannel = Math.max(1, videoProducer.getBytesPerChannel());
+        int initBytes = initW * initH * this.texChannels * this.bytesPerChannel;
+        this.syncSlot = new FrameSlot(initBytes);
 
         ClientAgentConnection cac = missionInit.getClientAgentConnection();
         if (cac == null)
@@ -155,43 +247,42 @@ public class VideoHook {
                 break;
         }
 
-        this.connection = new TCPSocketChannel(agentIPAddress, agentPort, "vid");
-        this.failedTCPSendCount = 0;
-        this.isRunning = true;
-    }
+        this.frameHistory.reset();
+        this.framesDropped.set(0);
 
-    /**
-     * Resizes the window and the Minecraft rendering if necessary. Set renderWidth and renderHeight first.
-     */
-    private void resizeIfNeeded()
-    {
-        MinecraftClient instance = MinecraftClient.getInstance();
-        Window window = instance.getWindow();
-        if (window == null){
-            return;
+        FrameTransport transport = cac.getFrameTransport();
+        if (transport != null && transport.getType() == FrameTransportType.SHARED_MEMORY)
+        {
+            try
+            {
+                this.frameRing = new SharedFrameRing(Paths.get(transport.getDirectory(), "vereya-frames-" + agentPort),
+                        transport.getSlots(), initBytes + SharedFrameRing.HEADER_ALLOWANCE);
+            }
+            catch (IOException e)
+            {
+                System.out.println("Failed to map shared frame ring - sending frames over TCP: " + e);
+                this.frameRing = null;
+            }
         }
 
-        if (this.renderWidth == 0 || this.renderHeight == 0) {
-            return;
-        }
-        // resize the window if we need to
-        if( this.renderedWidth == 0 ) {
-            this.renderedWidth = this.renderWidth;
-            this.renderedHeight = this.renderHeight;
-            LogManager.getLogger().debug("resizing to " + this.renderHeight + " " + this.renderedWidth);
+        // In a single-connection bundle only the first hook talks to the agent, and with shared memory
+        // the connection only carries notifications, if the agent wants them.
+        boolean ownConnection = (this.bundle == null || !this.bundle.isSingleConnection() || this.bundle.isPrimary(this))
+                && (this.frameRing == null || transport.isNotify());
+        if (ownConnection)
+            this.connection = new TCPSocketChannel(agentIPAddress, agentPort, "vid");
+        this.failedTCPSendCount = 0;
+        int queueLength = videoProducer.getSendQueueLength();
+        if (queueLength > 0 && (this.bundle == null || !this.bundle.isSingleConnection()))
+        {
+            long blockWaitNs = (this.captureIntervalNs > 0) ? this.captureIntervalNs : BLOCK_WAIT_NS;
+            this.sender = new FrameSender(queueLength, initBytes, videoProducer.getDropPolicy(), blockWaitNs);
+            this.sender.start();
+            this.discardSlot = this.syncSlot;
+            this.syncSlot = null;
         }
-        int oldRenderWidth = window.getFramebufferWidth();
-        int oldRenderHeight = window.getFramebufferHeight();
-        if( this.renderedWidth == oldRenderWidth && this.renderedHeight == oldRenderHeight )
-            return;
-
-        // Store width and height obtained in the same way as to be compared to
-        window.setWindowedSize(this.renderWidth, this.renderHeight);
-        this.renderedWidth = window.getFramebufferWidth();
-        this.renderedHeight = window.getFramebufferHeight();
-        // these will cause a number of visual artefacts
-//        window.setFramebufferHeight(this.renderHeight);
-//        window.setFramebufferWidth(this.renderWidth);
+        this.isRunning = true;
+        runningHooks.add(this);
     }
 
     /**
@@ -216,12 +307,21 @@ public class VideoHook {
         {
             System.out.println("Failed to unregister video hook: " + e);
         } */
-        // Close our TCP socket:
-        this.connection.close();
+        // Close our TCP socket - this also unblocks the sender if it is stuck in a write:
+        if (this.connection != null)
+            this.connection.close();
+        if (this.sender != null)
+        {
+            this.sender.shutdown();
+            this.sender = null;
+        }
+        if (this.frameRing != null)
+        {
+            this.frameRing.close();
+            this.frameRing = null;
+        }
         this.isRunning = false;
-
-        // allow the user to resize the window again
-        // Display.setResizable(true);
+        runningHooks.remove(this);
 
         // And fill in some diagnostic data:
         if (diags != null)
@@ -233,6 +333,7 @@ public class VideoHook {
                 vd.setAverageFpsSent(new BigDecimal(0));
             else
                 vd.setAverageFpsSent(new BigDecimal(1000.0 * this.framesSent / (this.timeOfLastFrame - this.timeOfFirstFrame)));
+            vd.setFramesDropped(this.framesDropped.get());
             diags.getVideoData().add(vd);
         }
     }
@@ -290,16 +391,8 @@ public class VideoHook {
         if (colourmapFrame != colourmapVideoProducer)
             return;*/
 
-        ClientPlayerEntity player = MinecraftClient.getInstance().player;
-        Vec3d pos = player.getPos();
-        float x = (float) pos.getX();
-        float y = (float) pos.getX();
-        float z = (float) pos.getX();
-        float yaw = player.getYaw();
-        float pitch = player.getPitch();
-        /*
-        float yaw = player.prevRotationYaw + (player.rotationYaw - player.prevRotationYaw) * event.getPartialTicks();
-        float pitch = player.prevRotationPitch + (player.rotationPitch - player.prevRotationPitch) * event.getPartialTicks();*/
+        if (this.bundle != null)
+            return; // The bundle captures this hook's frames together with the others.
 
         long time_now = System.nanoTime();
 
@@ -309,74 +402,62 @@ public class VideoHook {
         if (time_now < retry_time_ns)
             return;
 
+        long worldTick = currentWorldTick();
+        if (AddressHelper.getMissionControlPort() == 0 || !this.videoProducer.isNewFrameReady() || !shouldCapture(time_now, worldTick))
+            return;
+
+        captureAndSend(time_now, worldTick, this.frameHistory.getCaptures());
+    }
+
+    static long currentWorldTick()
+    {
+        ClientWorld world = MinecraftClient.getInstance().world;
+        return (world != null) ? world.getTime() : 0;
+    }
+
+    /**
+     * Capture a frame from the producer, describe it with the given sequence number and world tick,
+     * and send it - or queue it for the sender thread.<br>
+     * The producer is read back even if the frame is then dropped - because the send queue is full, or a failed
+     * send is waiting out its retry gap - so that its readback ring and the frame history stay in step.
+     */
+    void captureAndSend(long time_now, long worldTick, long sequence)
+    {
         boolean success = false;
 
         long time_after_render_ns = 0;
 
         try
         {
-            if (AddressHelper.getMissionControlPort() == 0 || tictac.equals("tac")) {
-                tictac = "tic";
-                success = true;
-                time_after_render_ns = System.nanoTime();
-            } else {
-                tictac = "tac";
-                Map<String, Number> header_map = new HashMap<>();
-                this.buffer.clear();
-                header_map.put("x", x);
-                header_map.put("y", y);
-                header_map.put("z", z);
-                header_map.put("yaw", yaw);
-                header_map.put("pitch", pitch);
-                glGetFloatv(GL_PROJECTION_MATRIX, projection);
-                glGetFloatv(GL_MODELVIEW_MATRIX, modelview);
-                int[] sizes = this.videoProducer.writeFrame(this.missionInit, this.buffer);
-                int imgW = Math.max(1, sizes[0]);
-                int imgH = Math.max(1, sizes[1]);
-                int requiredLen = imgW * imgH * this.texChannels;
-                if (this.buffer.capacity() < requiredLen) {
-                    this.buffer = BufferUtils.createByteBuffer(requiredLen);
-                    // Re-fetch frame into newly sized buffer
-                    sizes = this.videoProducer.writeFrame(this.missionInit, this.buffer);
-                    imgW = Math.max(1, sizes[0]);
-                    imgH = Math.max(1, sizes[1]);
-                    requiredLen = imgW * imgH * this.texChannels;
-                }
-                this.buffer.limit(requiredLen);
-                header_map.put("img_width", imgW);
-                header_map.put("img_height", imgH);
-                header_map.put("img_ch", this.texChannels);
-                JSONObject jo_header = new JSONObject(header_map);
-                float[] proj_floats = new float[16];
-                float[] modelview_floats = new float[16];
-                readColumnMajor(proj_floats, projection.asReadOnlyBuffer());
-                readColumnMajor(modelview_floats, modelview.asReadOnlyBuffer());
-                jo_header.append("projectionMatrix", proj_floats);
-                jo_header.append("modelViewMatrix", modelview_floats);
-                byte[] jo_bytes = jo_header.toString().getBytes(StandardCharsets.UTF_8);
-                int jo_len = jo_bytes.length;
-                time_after_render_ns = System.nanoTime();
-                if (this.buffer != null) {
-                    ByteBuffer jo_len_buffer = ByteBuffer.allocate(4).order(ByteOrder.BIG_ENDIAN).putInt(jo_len);
-                    jo_len_buffer.flip();
-                    int frame_buf_len = this.buffer.remaining();
-                    ByteBuffer payload = this.buffer.slice();
-                    payload.limit(frame_buf_len);
-                    ByteBuffer[] buffers = {jo_len_buffer, ByteBuffer.wrap(jo_bytes), payload};
-                    success = this.connection.sendTCPBytes(buffers, jo_len + frame_buf_len + 4);
-                }
+            recordFrameState(worldTick, sequence);
+
+            FrameSlot slot = null;
+            if (!isRetryPending(time_now))
+                slot = (this.sender != null) ? this.sender.acquire() : this.syncSlot;
+            if (slot == null) {
+                // Nothing will be sent this time; read the frame back anyway and throw it away.
+                captureFrame((this.sender != null) ? this.discardSlot : this.syncSlot);
+                return;
             }
+            if (!captureFrame(slot)) {
+                // The producer is still filling its readback pipeline; nothing to send yet.
+                if (this.sender != null)
+                    this.sender.release(slot);
+                return;
+            }
+            time_after_render_ns = System.nanoTime();
+            if (this.sender != null) {
+                this.sender.publish(slot);
+                return; // The sender thread does the bookkeeping once the frame is out.
+            }
+            success = sendSlot(slot);
 
             long time_after_ns = System.nanoTime();
             float ms_send = (time_after_ns - time_after_render_ns) / 1000000.0f;
             float ms_render = (time_after_render_ns - time_now) / 1000000.0f;
             if (success)
             {
-                this.failedTCPSendCount = 0;    // Reset count of failed sends.
-                this.timeOfLastFrame = System.currentTimeMillis();
-                if (this.timeOfFirstFrame == 0)
-                    this.timeOfFirstFrame = this.timeOfLastFrame;
-                this.framesSent++;
+                frameSent();
                 //            System.out.format("Total: %.2fms; collecting took %.2fms; sending %d bytes took %.2fms\n", ms_send + ms_render, ms_render, size, ms_send);
                 //            System.out.println("Collect: " + ms_render + "; Send: " + ms_send);
             }
@@ -387,14 +468,496 @@ public class VideoHook {
         }
 
         if (!success) {
-            System.out.format("Failed to send frame - will retry in %d seconds\n", RETRY_GAP_NS / 1000000000L);
-            if (this.connection.exception != null){
-                System.out.println("reconnecting");
-                this.connection = new TCPSocketChannel(connection.getAddress(), connection.getPort(), "vid");
+            frameFailed(time_now);
+        }
+    }
+
+    /**
+     * Remember the pose this frame is rendered with - an asynchronous producer
+     * may only hand it back a few captures later.
+     */
+    private void recordFrameState(long worldTick, long sequence)
+    {
+        ClientPlayerEntity player = MinecraftClient.getInstance().player;
+        Vec3d pos = player.getPos();
+        FrameHistory.FrameState captured = this.frameHistory.record();
+        captured.sequence = sequence;
+        captured.worldTick = worldTick;
+        captured.x = (float) pos.getX();
+        captured.y = (float) pos.getY();
+        captured.z = (float) pos.getZ();
+        captured.yaw = player.getYaw();
+        captured.pitch = player.getPitch();
+        glGetFloatv(GL_PROJECTION_MATRIX, projection);
+        glGetFloatv(GL_MODELVIEW_MATRIX, modelview);
+        readColumnMajor(captured.projection, projection.asReadOnlyBuffer());
+        readColumnMajor(captured.modelview, modelview.asReadOnlyBuffer());
+    }
+
+    /**
+     * Apply the capture policy to the frame that has just been rendered.
+     * @return true if this frame should be captured and sent.
+     */
+    boolean shouldCapture(long time_now, long worldTick)
+    {
+        long frameIndex = this.framesRendered++;
+        switch (this.capturePolicy)
+        {
+            case EVERY_FRAME:
+                return true;
+            case PER_TICK:
+                if (worldTick == this.lastCaptureTick)
+                    return false;
+                this.lastCaptureTick = worldTick;
+                return true;
+            case TARGET_FPS:
+                if (time_now < this.nextCaptureNs)
+                    return false;
+                // Keep to the schedule, but don't try to catch up after a long stall.
+                if (this.nextCaptureNs == 0 || time_now - this.nextCaptureNs > this.captureIntervalNs)
+                    this.nextCaptureNs = time_now + this.captureIntervalNs;
+                else
+                    this.nextCaptureNs += this.captureIntervalNs;
+                return true;
+            case ON_DEMAND:
+                return this.framesRequested.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0;
+            case EVERY_NTH_FRAME:
+            default:
+                return frameIndex % this.captureInterval == 0;
+        }
+    }
+
+    /**
+     * Whether this hook's capture policy would take the frame about to be rendered - like shouldCapture,
+     * but without using the frame up.
+     */
+    private boolean isCaptureDue(long time_now, long worldTick)
+    {
+        if (time_now < this.retry_time_ns)
+            return false;
+        switch (this.capturePolicy)
+        {
+            case EVERY_FRAME:
+                return true;
+            case PER_TICK:
+                return worldTick != this.lastCaptureTick;
+            case TARGET_FPS:
+                return time_now >= this.nextCaptureNs;
+            case ON_DEMAND:
+                return this.framesRequested.get() > 0;
+            case EVERY_NTH_FRAME:
+            default:
+                return this.framesRendered % this.captureInterval == 0;
+        }
+    }
+
+    /**
+     * Called before each client frame when rendering on demand.
+     * @return true if any running hook wants the frame; false if it need not be rendered at all.
+     */
+    public static boolean isAnyCaptureDue()
+    {
+        if (runningHooks.isEmpty())
+            return true;
+        if (AddressHelper.getMissionControlPort() == 0)
+            return false;
+        long time_now = System.nanoTime();
+        long worldTick = currentWorldTick();
+        for (VideoHook hook : runningHooks)
+        {
+            // A bundle goes by its first hook's capture policy.
+            if (hook.bundle != null && !hook.bundle.isPrimary(hook))
+                continue;
+            if (hook.isCaptureDue(time_now, worldTick))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called for each client frame that was not rendered, so every-nth-frame capture counts client frames.
+     */
+    public static void frameSkipped()
+    {
+        for (VideoHook hook : runningHooks)
+            hook.framesRendered++;
+    }
+
+    /**
+     * Ask for a frame to be captured at the next opportunity; only has an effect with the on-demand capture policy.
+     * Call on getCaptureHook() - a bundled hook doesn't decide its own captures.
+     */
+    public void requestFrame()
+    {
+        if (this.isRunning && this.capturePolicy == FrameCapturePolicy.ON_DEMAND)
+            this.framesRequested.incrementAndGet();
+    }
+
+    /** Get the hook whose capture policy decides when this hook captures: the bundle's primary hook, or this one. */
+    public VideoHook getCaptureHook()
+    {
+        return (this.bundle != null) ? this.bundle.getPrimary() : this;
+    }
+
+    void setBundle(FrameBundle bundle)
+    {
+        this.bundle = bundle;
+    }
+
+    boolean isNewFrameReady()
+    {
+        return this.videoProducer.isNewFrameReady();
+    }
+
+    boolean isRetryPending(long time_now)
+    {
+        return time_now < this.retry_time_ns;
+    }
+
+    /**
+     * Capture this hook's frame for a single-connection bundle, which sends it with the others.
+     * @return false if the producer had no frame ready.
+     */
+    boolean captureForBundle(long worldTick, long sequence)
+    {
+        recordFrameState(worldTick, sequence);
+        return captureFrame(this.syncSlot);
+    }
+
+    /**
+     * Put the frame captured by captureForBundle into parts, starting at index, as length, header and pixels.
+     * @return the number of bytes added.
+     */
+    int addBundleParts(ByteBuffer[] parts, int index)
+    {
+        int bytes = prepareParts(this.syncSlot);
+        System.arraycopy(this.syncSlot.parts, 0, parts, index, this.syncSlot.parts.length);
+        return bytes;
+    }
+
+    /**
+     * Send a single-connection bundle on this hook's connection.
+     * @return true if it was sent; on failure the retry gap applies as for a single frame.
+     */
+    boolean sendBundle(ByteBuffer[] parts, int length, long time_now)
+    {
+        boolean success = false;
+        try
+        {
+            success = this.connection.sendTCPBytes(parts, length);
+        }
+        catch (Exception e)
+        {
+            System.out.format(e.getMessage());
+        }
+        if (!success)
+            frameFailed(time_now);
+        return success;
+    }
+
+    /** Get the type of frames this hook is sending, or null if it has no producer. */
+    public IVideoProducer.VideoType getVideoType()
+    {
+        return (this.videoProducer != null) ? this.videoProducer.getVideoType() : null;
+    }
+
+    /**
+     * Ask the producer for a frame and describe it in the slot's header.
+     * @return false if the producer had no frame ready.
+     */
+    private boolean captureFrame(FrameSlot slot)
+    {
+        slot.pixels.clear();
+        int[] sizes = this.videoProducer.writeFrame(this.missionInit, slot.pixels);
+        int imgW = Math.max(1, sizes[0]);
+        int imgH = Math.max(1, sizes[1]);
+        int requiredLen = frameBytes(imgW, imgH);
+        if (slot.pixels.capacity() < requiredLen) {
+            slot.pixels = BufferUtils.createByteBuffer(requiredLen);
+            // Re-fetch frame into newly sized buffer
+            sizes = this.videoProducer.writeFrame(this.missionInit, slot.pixels);
+            imgW = Math.max(1, sizes[0]);
+            imgH = Math.max(1, sizes[1]);
+            requiredLen = frameBytes(imgW, imgH);
+        }
+        boolean frameReady = sizes[0] > 0 && sizes[1] > 0;
+        int latency = frameReady ? Math.min(this.videoProducer.getFrameLatency(), FrameHistory.MAX_LATENCY) : 0;
+        FrameHistory.FrameState delivered = this.frameHistory.deliver(latency);
+        if (!frameReady)
+            return false;
+
+        if (this.headerFormat == FrameHeaderFormat.BINARY) {
+            slot.header = writeBinaryHeader(slot, delivered, imgW, imgH, latency);
+        } else {
+            Map<String, Number> header_map = new HashMap<>();
+            header_map.put("x", delivered.x);
+            header_map.put("y", delivered.y);
+            header_map.put("z", delivered.z);
+            header_map.put("yaw", delivered.yaw);
+            header_map.put("pitch", delivered.pitch);
+            header_map.put("img_width", imgW);
+            header_map.put("img_height", imgH);
+            header_map.put("img_ch", this.texChannels);
+            header_map.put("bytes_per_channel", this.bytesPerChannel);
+            header_map.put("frame_latency", latency);
+            header_map.put("sequence", delivered.sequence);
+            header_map.put("world_tick", delivered.worldTick);
+            JSONObject jo_header = new JSONObject(header_map);
+            jo_header.append("projectionMatrix", delivered.projection);
+            jo_header.append("modelViewMatrix", delivered.modelview);
+            Map<String, Object> metadata = this.videoProducer.getFrameMetadata();
+            if (metadata != null) {
+                for (Map.Entry<String, Object> entry : metadata.entrySet())
+                    jo_header.put(entry.getKey(), entry.getValue());
+            }
+            slot.jsonHeader.reset();
+            jo_header.write(slot.jsonHeader);
+            slot.header = slot.jsonHeader.toByteBuffer();
+        }
+        slot.frameBytes = requiredLen;
+        return true;
+    }
+
+    /** Size of a frame's pixels plus whatever the producer writes after them. */
+    private int frameBytes(int imgW, int imgH)
+    {
+        return imgW * imgH * this.texChannels * this.bytesPerChannel + this.videoProducer.getExtraFrameBytes(imgW, imgH);
+    }
+
+    /**
+     * Fill the fixed little-endian frame header, followed by the producer's metadata as UTF-8 JSON if it has any
+     * - see FrameHeaderFormat in MissionHandlers.xsd for the layout.
+     * @return the slot's binary header buffer, ready to be sent.
+     */
+    private ByteBuffer writeBinaryHeader(FrameSlot slot, FrameHistory.FrameState delivered, int imgW, int imgH, int latency)
+    {
+        Map<String, Object> metadata = this.videoProducer.getFrameMetadata();
+        byte[] trailer = (metadata != null) ? new JSONObject(metadata).toString().getBytes(StandardCharsets.UTF_8) : null;
+        int trailerBytes = (trailer != null) ? trailer.length : 0;
+        if (slot.binaryHeader.capacity() < BINARY_HEADER_BYTES + trailerBytes)
+            slot.binaryHeader = ByteBuffer.allocateDirect(BINARY_HEADER_BYTES + trailerBytes).order(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer out = slot.binaryHeader;
+        out.clear();
+        out.putInt(BINARY_HEADER_MAGIC);
+        out.putShort(BINARY_HEADER_VERSION);
+        out.putShort((short) BINARY_HEADER_BYTES);
+        out.putLong(delivered.sequence);
+        out.putLong(delivered.worldTick);
+        out.putFloat(delivered.x);
+        out.putFloat(delivered.y);
+        out.putFloat(delivered.z);
+        out.putFloat(delivered.yaw);
+        out.putFloat(delivered.pitch);
+        out.putInt(imgW);
+        out.putInt(imgH);
+        out.putInt(this.texChannels);
+        out.putInt(this.bytesPerChannel);
+        out.putInt(latency);
+        for (float f : delivered.projection)
+            out.putFloat(f);
+        for (float f : delivered.modelview)
+            out.putFloat(f);
+        out.putInt(trailerBytes);
+        if (trailer != null)
+            out.put(trailer);
+        out.flip();
+        return out;
+    }
+
+    /** Write one frame to the agent: length-prefixed header followed by the pixels. */
+    private boolean sendSlot(FrameSlot slot)
+    {
+        if (this.frameRing != null)
+            return publishSlot(slot);
+        return this.connection.sendTCPBytes(slot.parts, prepareParts(slot));
+    }
+
+    /** Write one frame into the shared ring, then tell the agent its sequence number if it wants to know. */
+    private boolean publishSlot(FrameSlot slot)
+    {
+        slot.header.rewind();
+        slot.pixels.position(0);
+        slot.pixels.limit(slot.frameBytes);
+        long sequence;
+        try
+        {
+            sequence = this.frameRing.publish(slot.header, slot.pixels);
+        }
+        catch (IOException e)
+        {
+            System.out.println("Failed to write frame to " + this.frameRing.getPath() + ": " + e);
+            return false;
+        }
+        if (this.connection == null)
+            return true;
+        this.notification.clear();
+        this.notification.putLong(sequence);
+        this.notification.flip();
+        return this.connection.sendTCPBytes(this.notificationParts, this.notification.remaining());
+    }
+
+    /** Whether frames go into a shared memory ring rather than over TCP. */
+    boolean usesSharedMemory()
+    {
+        return this.frameRing != null;
+    }
+
+    /**
+     * Point the slot's parts at its length prefix, header and pixels, ready to be written.
+     * @return the number of bytes in the parts.
+     */
+    private int prepareParts(FrameSlot slot)
+    {
+        slot.header.rewind();
+        int jo_len = slot.header.remaining();
+        slot.headerLength.clear();
+        slot.headerLength.putInt(jo_len);
+        slot.headerLength.flip();
+        slot.pixels.position(0);
+        slot.pixels.limit(slot.frameBytes);
+        slot.parts[0] = slot.headerLength;
+        slot.parts[1] = slot.header;
+        slot.parts[2] = slot.pixels;
+        return jo_len + slot.frameBytes + 4;
+    }
+
+    void frameSent()
+    {
+        this.failedTCPSendCount = 0;    // Reset count of failed sends.
+        this.timeOfLastFrame = System.currentTimeMillis();
+        if (this.timeOfFirstFrame == 0)
+            this.timeOfFirstFrame = this.timeOfLastFrame;
+        this.framesSent++;
+    }
+
+    private void frameFailed(long time_now)
+    {
+        System.out.format("Failed to send frame - will retry in %d seconds\n", RETRY_GAP_NS / 1000000000L);
+        if (this.connection != null && this.connection.exception != null){
+            System.out.println("reconnecting");
+            this.connection = new TCPSocketChannel(connection.getAddress(), connection.getPort(), "vid");
+        }
+
+        retry_time_ns = time_now + RETRY_GAP_NS;
+        this.failedTCPSendCount++;
+    }
+
+    /**
+     * Background thread which owns a fixed ring of preallocated frame slots. The render thread
+     * fills free slots and publishes them; this thread writes them to the agent and hands them
+     * back, so a slow or stalled agent never holds up rendering. When every slot is in use the
+     * configured drop policy decides whether the newest frame, the oldest queued frame, or the
+     * render thread gives way.
+     */
+    private class FrameSender extends Thread
+    {
+        private final ArrayBlockingQueue<FrameSlot> free;
+        private final ArrayBlockingQueue<FrameSlot> ready;
+        private final FrameDropPolicy policy;
+        private final long blockWaitNs;
+        private volatile boolean keepRunning = true;
+
+        FrameSender(int queueLength, int slotBytes, FrameDropPolicy policy, long blockWaitNs)
+        {
+            super("VideoSender-" + VideoHook.this.videoProducer.getVideoType());
+            setDaemon(true);
+            // One slot more than the queue length, so a frame can be in flight while the queue is full.
+            int slots = queueLength + 1;
+            this.free = new ArrayBlockingQueue<>(slots);
+            this.ready = new ArrayBlockingQueue<>(slots);
+            for (int i = 0; i < slots; i++)
+                this.free.add(new FrameSlot(slotBytes));
+            this.policy = (policy != null) ? policy : FrameDropPolicy.BLOCK;
+            this.blockWaitNs = blockWaitNs;
+        }
+
+        /**
+         * Get an empty slot for the render thread to fill.
+         * @return the slot, or null if the frame should be dropped.
+         */
+        FrameSlot acquire() throws InterruptedException
+        {
+            FrameSlot slot = this.free.poll();
+            if (slot != null)
+                return slot;
+            switch (this.policy)
+            {
+                case DROP_OLDEST:
+                    slot = this.ready.poll();
+                    break;
+                case BLOCK:
+                    // Wait about a frame, then drop it - rendering must not stall for a whole socket timeout.
+                    slot = this.free.poll(this.blockWaitNs, TimeUnit.NANOSECONDS);
+                    break;
+                default:
+                    break;
             }
+            if (slot == null || this.policy == FrameDropPolicy.DROP_OLDEST)
+                VideoHook.this.framesDropped.incrementAndGet();
+            return slot;
+        }
+
+        void publish(FrameSlot slot) { this.ready.add(slot); }
 
-            retry_time_ns = time_now + RETRY_GAP_NS;
-            this.failedTCPSendCount++;
+        void release(FrameSlot slot) { this.free.add(slot); }
+
+        void shutdown()
+        {
+            this.keepRunning = false;
+            this.interrupt();
+            try
+            {
+                this.join(RETRY_GAP_NS / 1000000L);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            while (this.keepRunning)
+            {
+                FrameSlot slot;
+                try
+                {
+                    slot = this.ready.poll(100, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    break;
+                }
+                if (slot == null)
+                    continue;
+                try
+                {
+                    if (sendSlot(slot))
+                    {
+                        frameSent();
+                    }
+                    else
+                    {
+                        frameFailed(System.nanoTime());
+                        // Frames queued behind a failed send are stale by the time we reconnect.
+                        FrameSlot stale;
+                        while ((stale = this.ready.poll()) != null)
+                        {
+                            VideoHook.this.framesDropped.incrementAndGet();
+                            this.free.add(stale);
+                        }
+                    }
+                }
+                catch (Exception e)
+                {
+                    System.out.format(e.getMessage());
+                }
+                finally
+                {
+                    this.free.add(slot);
+                }
+            }
         }
     }
 }
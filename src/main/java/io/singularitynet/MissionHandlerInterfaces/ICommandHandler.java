@@ -2,6 +2,8 @@ package io.singularitynet.MissionHandlerInterfaces;
 
 import io.singularitynet.projectmalmo.MissionInit;
 
+import java.util.Collection;
+
 public interface ICommandHandler {
 
 
@@ -20,4 +22,24 @@ public interface ICommandHandler {
     void deinstall(MissionInit currentMissionInit);
 
     boolean execute(String command, MissionInit currentMissionInit);
+
+    /** Handle a command that has already been split into its verb and parameter.<br>
+     * Command groups call this, so a command is only parsed once however many handlers it passes through.
+     * @param verb the first word of the command.
+     * @param parameter the rest of the command, or "" if there is none.
+     * @return true if the command was handled.
+     */
+    default boolean execute(String verb, String parameter, MissionInit currentMissionInit)
+    {
+        return execute(parameter.isEmpty() ? verb : verb + " " + parameter, currentMissionInit);
+    }
+
+    /** The verbs this handler can accept, used by command groups to dispatch without probing every handler.<br>
+     * Only needs to be valid once the handler is installed. Case doesn't matter.
+     * @return the verbs, or null if the handler may accept any verb.
+     */
+    default Collection<String> getVerbs()
+    {
+        return null;
+    }
 }
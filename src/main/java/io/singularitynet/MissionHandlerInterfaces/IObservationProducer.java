@@ -1,11 +1,26 @@
 package io.singularitynet.MissionHandlerInterfaces;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import io.singularitynet.projectmalmo.MissionInit;
 
+import java.io.IOException;
+
 public interface IObservationProducer {
     public void cleanup();
     public void prepare(MissionInit missionInit);
 
     void writeObservationsToJSON(JsonObject json, MissionInit currentMissionInit);
+
+    /** Write this producer's observations into the message being streamed to the agent.<br>
+     * By default this calls writeObservationsToJSON on the shared tree, which is written out to the stream once every
+     * producer has run, so members that several producers add to (eg the controllable mobs) still get merged.
+     * Producers with large observations override this to write their own members straight to the writer.
+     * @param writer the message, positioned inside its top-level object.
+     * @param json the shared tree, for anything that has to be merged with other producers' observations.
+     */
+    default void writeObservations(JsonWriter writer, JsonObject json, MissionInit currentMissionInit) throws IOException
+    {
+        writeObservationsToJSON(json, currentMissionInit);
+    }
 }
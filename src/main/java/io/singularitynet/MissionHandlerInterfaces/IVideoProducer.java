@@ -19,9 +19,14 @@
 
 package io.singularitynet.MissionHandlerInterfaces;
 
+import io.singularitynet.projectmalmo.FrameCapturePolicy;
+import io.singularitynet.projectmalmo.FrameDropPolicy;
+import io.singularitynet.projectmalmo.FrameHeaderFormat;
 import io.singularitynet.projectmalmo.MissionInit;
 
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.util.Map;
 
 /** Interface for objects which are responsible for providing Minecraft video data.
  */
@@ -43,11 +48,61 @@ public interface IVideoProducer
      *
      * @param missionInit the MissionInit object for the currently running mission, which may contain parameters for the video requirements.
      * @return an array of bytes representing this frame.<br>
-     * (The format is unspecified; it is up to the IVideoProducer implementation and the agent to agree on how the data is formatted.)
+     * (The format is unspecified; it is up to the IVideoProducer implementation and the agent to agree on how the data is formatted.)<br>
+     * The returned array holds the frame width and height; a width or height of 0 means no frame is available yet
+     * (eg an asynchronous readback is still filling its pipeline) and nothing should be sent.
      */
 
     int[] writeFrame(MissionInit missionInit, ByteBuffer buffer);
 
+    /** Get the number of captured frames by which the last frame returned from writeFrame lags behind the current one.<br>
+     * Producers that read the GPU back asynchronously deliver older frames; synchronous producers return 0.
+     */
+    default int getFrameLatency() { return 0; }
+
+    /** Get the number of pixel-pack buffers used to read frames back asynchronously; 0 reads synchronously.*/
+    default int getReadbackBuffers() { return 0; }
+
+    /** Override the number of readback buffers, so that producers in a frame bundle all lag by the same number of frames.<br>
+     * Called before prepare; producers that always read back synchronously ignore it.
+     */
+    default void setReadbackBuffers(int buffers) {}
+
+    /** Called once for every rendered frame, before the capture policy is applied to it.<br>
+     * Producers that do not render a new image on every frame return false for the frames they skipped,
+     * so those frames are neither captured nor counted by the capture policy.
+     */
+    default boolean isNewFrameReady() { return true; }
+
+    /** Get which rendered frames should be captured and sent.*/
+    default FrameCapturePolicy getCapturePolicy() { return FrameCapturePolicy.EVERY_NTH_FRAME; }
+
+    /** Get N for the every-nth-frame capture policy.*/
+    default int getCaptureInterval() { return 2; }
+
+    /** Get the frame rate for the target-fps capture policy.*/
+    default BigDecimal getTargetFps() { return BigDecimal.valueOf(20); }
+
+    /** Get the number of captured frames that may wait for a background sender thread.<br>
+     * 0 means frames are sent synchronously on the render thread.
+     */
+    default int getSendQueueLength() { return 0; }
+
+    /** Get what to do with a captured frame when the send queue is full.*/
+    default FrameDropPolicy getDropPolicy() { return FrameDropPolicy.BLOCK; }
+
+    /** Get how each frame sent to the agent is described - the JSON header, or the fixed binary struct.*/
+    default FrameHeaderFormat getHeaderFormat() { return FrameHeaderFormat.JSON; }
+
+    /** Get the size in bytes of each channel of a pixel written by writeFrame - eg 4 for float32 depth.*/
+    default int getBytesPerChannel() { return 1; }
+
+    /** Get the number of bytes writeFrame writes after the pixels of a frame of the given size - eg a plane of instance ids.*/
+    default int getExtraFrameBytes(int width, int height) { return 0; }
+
+    /** Get extra fields for the json header of the frame last returned by writeFrame, or null if there are none.*/
+    default Map<String, Object> getFrameMetadata() { return null; }
+
     /** Get the requested width of the video frames returned.*/
     int getWidth();
 
@@ -6,6 +6,9 @@ import net.minecraft.client.MinecraftClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
+import java.util.List;
+
 public class BlockPlaceCommandsImplementation extends CommandBase {
 
     private static final Logger LOGGER = LogManager.getLogger(BlockPlaceCommandsImplementation.class.getName());
@@ -44,6 +47,12 @@ public class BlockPlaceCommandsImplementation extends CommandBase {
 
     }
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of(BlockPlaceCommand.PLACE_BLOCK.value());
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit) {
         if (!verb.equalsIgnoreCase(BlockPlaceCommand.PLACE_BLOCK.value()))
@@ -30,12 +30,21 @@ import net.minecraft.client.network.ClientPlayerEntity;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
+import java.util.List;
+
 /** Chat commands allow the players to broadcast text messages. */
 public class ChatCommandsImplementation extends CommandBase implements ICommandHandler
 {
     private boolean isOverriding;
     private static final Logger LOGGER = LogManager.getLogger();
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of(ChatCommand.CHAT.value());
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit)
     {
@@ -4,33 +4,59 @@ import com.mojang.blaze3d.platform.GlStateManager;
 import io.singularitynet.MissionHandlerInterfaces.IVideoProducer;
 import io.singularitynet.projectmalmo.ColourMapProducer;
 import io.singularitynet.projectmalmo.EntityTypes;
+import io.singularitynet.projectmalmo.FrameCapturePolicy;
+import io.singularitynet.projectmalmo.FrameDropPolicy;
+import io.singularitynet.projectmalmo.FrameHeaderFormat;
 import io.singularitynet.projectmalmo.MissionInit;
 import io.singularitynet.projectmalmo.MobWithColour;
+import io.singularitynet.projectmalmo.SegmentationMode;
+import io.singularitynet.utils.FrameResampler;
+import io.singularitynet.utils.PixelPackRing;
 import io.singularitynet.utils.TextureHelper;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gl.Framebuffer;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL30;
 
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
-import static org.lwjgl.opengl.GL12.GL_BGRA;
-
 public class ColourMapProducerImplementation extends HandlerBase implements IVideoProducer {
     private static final Logger LOGGER = LogManager.getLogger(ColourMapProducerImplementation.class);
     private static final int CHANNEL_COUNT = 3;
+    private static final int INSTANCE_BYTES = 2;
 
     private ColourMapProducer cmParams;
     private final Map<String, Integer> mobColours = new HashMap<>();
     private final Map<String, Integer> miscColours = new HashMap<>();
     // Segmentation FBO is owned by TextureHelper; do not store/delete locally.
-    private ByteBuffer readbackBuffer;
+    // Ring of pixel-pack buffers for asynchronous readback; null when reading synchronously.
+    private PixelPackRing readbackRing;
+    private int frameLatency = 0;
+    private int readbackBuffersOverride = -1;  // Set when a frame bundle needs all its producers equally deep.
+    // Crops/scales the frame on the GPU before readback; null if the agent wants the full frame.
+    private FrameResampler resampler;
     private final int[] frameSize = new int[2];
+    // Segmentation frame count when the agent was last offered a frame; -1 before the first.
+    private long lastSegmentationFrame = -1;
+    // Optional plane of 16-bit instance ids sent after the colour pixels, read back like the colour map.
+    private boolean instanceChannel = false;
+    private PixelPackRing instanceRing;
+    private FrameResampler instanceResampler;
+    // Entities drawn in each of the last few readbacks, so a frame delivered late is described by its own table.
+    private final List<List<TextureHelper.EntityInstance>> instanceTables = new ArrayList<>();
+    private long instanceReads = 0;
+    private List<TextureHelper.EntityInstance> deliveredInstances = null;
+    private final Map<String, Object> frameMetadata = new HashMap<>();
 
     @Override
     public boolean parseParameters(Object params) {
@@ -74,67 +100,201 @@ public class ColourMapProducerImplementation extends HandlerBase implements IVid
         return this.cmParams != null ? this.cmParams.getHeight() : 0;
     }
 
+    @Override
+    public boolean isNewFrameReady() {
+        // Nothing new while the segmentation render is still in progress, or on frames it was skipped.
+        if (TextureHelper.colourmapFrame) {
+            return false;
+        }
+        long rendered = TextureHelper.getSegmentationFramesRendered();
+        if (rendered == this.lastSegmentationFrame) {
+            return false;
+        }
+        this.lastSegmentationFrame = rendered;
+        return true;
+    }
+
+    @Override
+    public FrameCapturePolicy getCapturePolicy() {
+        return this.cmParams != null ? this.cmParams.getCapturePolicy() : FrameCapturePolicy.EVERY_NTH_FRAME;
+    }
+
+    @Override
+    public int getCaptureInterval() {
+        return this.cmParams != null ? this.cmParams.getCaptureInterval() : 2;
+    }
+
+    @Override
+    public BigDecimal getTargetFps() {
+        return this.cmParams != null ? this.cmParams.getTargetFps() : BigDecimal.valueOf(20);
+    }
+
+    @Override
+    public int getSendQueueLength() {
+        return this.cmParams != null ? this.cmParams.getSendQueueLength() : 0;
+    }
+
+    @Override
+    public FrameDropPolicy getDropPolicy() {
+        return this.cmParams != null ? this.cmParams.getDropPolicy() : FrameDropPolicy.BLOCK;
+    }
+
+    @Override
+    public FrameHeaderFormat getHeaderFormat() {
+        return this.cmParams != null ? this.cmParams.getHeaderFormat() : FrameHeaderFormat.JSON;
+    }
+
+    @Override
+    public int getReadbackBuffers() {
+        return (this.readbackBuffersOverride >= 0) ? this.readbackBuffersOverride : (this.cmParams != null ? this.cmParams.getReadbackBuffers() : 0);
+    }
+
+    @Override
+    public void setReadbackBuffers(int buffers) { this.readbackBuffersOverride = buffers; }
+
+    @Override
+    public int getFrameLatency() {
+        return this.frameLatency;
+    }
+
+    @Override
+    public int getExtraFrameBytes(int width, int height) {
+        return this.instanceChannel ? width * height * INSTANCE_BYTES : 0;
+    }
+
+    @Override
+    public Map<String, Object> getFrameMetadata() {
+        if (!this.instanceChannel || this.deliveredInstances == null) {
+            return null;
+        }
+        List<Map<String, Object>> instances = new ArrayList<>(this.deliveredInstances.size());
+        for (TextureHelper.EntityInstance entity : this.deliveredInstances) {
+            Map<String, Object> instance = new LinkedHashMap<>();
+            instance.put("instance", entity.instance);
+            instance.put("id", entity.entityId);
+            instance.put("type", entity.type);
+            instance.put("uuid", entity.uuid.toString());
+            instances.add(instance);
+        }
+        this.frameMetadata.put("instances", instances);
+        return this.frameMetadata;
+    }
+
     @Override
     public int[] writeFrame(MissionInit missionInit, ByteBuffer buffer) {
         Framebuffer fbo = ensureFramebuffer();
         int width = fbo != null ? fbo.textureWidth : Math.max(1, getWidth());
         int height = fbo != null ? fbo.textureHeight : Math.max(1, getHeight());
-        int requiredBytes = width * height * CHANNEL_COUNT;
-
-        if (buffer != null && buffer.capacity() < requiredBytes) {
-            LOGGER.warn("Provided buffer capacity {} is smaller than required {} for {}x{} colour map", buffer.capacity(), requiredBytes, width, height);
-            buffer = null;
-        }
-
-        boolean readSuccess = false;
-        if (fbo != null) {
-            ByteBuffer bgra = ensureReadbackBuffer(width * height * 4);
-            bgra.clear();
-
-            int previousFbo = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
-            int previousReadBuffer = GL11.glGetInteger(GL11.GL_READ_BUFFER);
-            int previousAlignment = GL11.glGetInteger(GL11.GL_PACK_ALIGNMENT);
-            try {
-                GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, fbo.fbo);
-                GL30.glReadBuffer(GL30.GL_COLOR_ATTACHMENT0);
-                GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
-                GlStateManager._readPixels(0, 0, width, height, GL_BGRA, GL11.GL_UNSIGNED_BYTE, bgra);
-                readSuccess = true;
-            } catch (Throwable t) {
-                LOGGER.warn("Failed to read segmentation framebuffer", t);
-            } finally {
-                GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, previousAlignment);
-                GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, previousFbo);
-                GL11.glReadBuffer(previousReadBuffer);
-            }
+        if (this.resampler != null) {
+            int sourceWidth = width;
+            width = this.resampler.outputWidth(sourceWidth, height);
+            height = this.resampler.outputHeight(sourceWidth, height);
+        }
+        int colourBytes = width * height * CHANNEL_COUNT;
+        int requiredBytes = colourBytes + getExtraFrameBytes(width, height);
+        frameSize[0] = width;
+        frameSize[1] = height;
+
+        // Let the caller grow its buffer and ask again before we queue any GL work.
+        if (buffer == null || buffer.capacity() < requiredBytes) {
+            return frameSize;
+        }
 
-            if (readSuccess && buffer != null) {
+        if (fbo == null) {
+            buffer.clear();
+            buffer.limit(requiredBytes);
+            return frameSize;
+        }
+
+        // The GPU drops the alpha channel for us: a GL_BGR read with a pack alignment of 1 gives
+        // tightly packed 3-byte pixels, so the readback lands in the caller's buffer as-is.
+        boolean frameReady = false;
+        int previousFbo = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+        int previousReadBuffer = GL11.glGetInteger(GL11.GL_READ_BUFFER);
+        int previousAlignment = GL11.glGetInteger(GL11.GL_PACK_ALIGNMENT);
+        try {
+            // Crop/scale with nearest filtering so every pixel keeps an exact segmentation colour.
+            int readFbo = this.resampler != null ? this.resampler.resample(fbo.fbo, fbo.textureWidth, fbo.textureHeight) : fbo.fbo;
+            GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, readFbo);
+            GL30.glReadBuffer(GL30.GL_COLOR_ATTACHMENT0);
+            GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+            if (this.readbackRing == null) {
                 buffer.clear();
-                for (int i = 0; i < width * height; i++) {
-                    int src = i * 4;
-                    byte b = bgra.get(src);
-                    byte g = bgra.get(src + 1);
-                    byte r = bgra.get(src + 2);
-                    buffer.put(b);
-                    buffer.put(g);
-                    buffer.put(r);
-                }
-                buffer.flip();
+                GlStateManager._readPixels(0, 0, width, height, GL12.GL_BGR, GL11.GL_UNSIGNED_BYTE, buffer);
+                this.frameLatency = 0;
+                frameReady = true;
+            } else if (this.readbackRing.readPixels(width, height, GL12.GL_BGR, GL11.GL_UNSIGNED_BYTE, CHANNEL_COUNT, buffer)) {
+                this.frameLatency = this.readbackRing.getLatency();
+                frameReady = true;
             }
-        } else if (buffer != null) {
-            buffer.clear();
-            buffer.limit(Math.min(buffer.capacity(), requiredBytes));
+            if (this.instanceChannel) {
+                // Read in step with the colour map, so both planes come from the same frame.
+                boolean idsReady = readInstanceIds(fbo, width, height, buffer.slice(colourBytes, requiredBytes - colourBytes));
+                this.deliveredInstances = recordInstanceTable();
+                frameReady &= idsReady;
+            }
+        } catch (Throwable t) {
+            LOGGER.warn("Failed to read segmentation framebuffer", t);
+        } finally {
+            GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, previousAlignment);
+            GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, previousFbo);
+            GL11.glReadBuffer(previousReadBuffer);
         }
 
-        frameSize[0] = width;
-        frameSize[1] = height;
+        if (frameReady) {
+            buffer.clear();
+            buffer.limit(requiredBytes);
+        } else {
+            frameSize[0] = 0;   // Ring still filling (or the read failed) - nothing to send this frame.
+            frameSize[1] = 0;
+        }
         return frameSize;
     }
 
+    /**
+     * Reads the instance id target into dest, through the same crop/resize and
+     * readback ring settings as the colour map.
+     * @return false if the readback ring is still filling.
+     */
+    private boolean readInstanceIds(Framebuffer fbo, int width, int height, ByteBuffer dest) {
+        if (!TextureHelper.hasInstanceTarget()) {
+            for (int i = 0; i < dest.capacity(); i++) {
+                dest.put(i, (byte) 0);
+            }
+            return true;
+        }
+        if (this.instanceResampler != null) {
+            GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER,
+                    this.instanceResampler.resample(fbo.fbo, GL30.GL_COLOR_ATTACHMENT1, fbo.textureWidth, fbo.textureHeight));
+            GL30.glReadBuffer(GL30.GL_COLOR_ATTACHMENT0);
+        } else {
+            GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, fbo.fbo);
+            GL30.glReadBuffer(GL30.GL_COLOR_ATTACHMENT1);
+        }
+        if (this.instanceRing == null) {
+            GL11.glReadPixels(0, 0, width, height, GL11.GL_RED, GL11.GL_UNSIGNED_SHORT, dest);
+            return true;
+        }
+        return this.instanceRing.readPixels(width, height, GL11.GL_RED, GL11.GL_UNSIGNED_SHORT, INSTANCE_BYTES, dest);
+    }
+
+    /**
+     * Remembers the entities drawn in the segmentation frame just queued for readback.
+     * @return the entities drawn in the frame being delivered, frameLatency readbacks ago.
+     */
+    private List<TextureHelper.EntityInstance> recordInstanceTable() {
+        int depth = this.instanceTables.size();
+        this.instanceTables.set((int) (this.instanceReads % depth), TextureHelper.getFrameInstances());
+        this.instanceReads++;
+        long delivered = this.instanceReads - 1 - Math.min(this.frameLatency, depth - 1);
+        return delivered >= 0 ? this.instanceTables.get((int) (delivered % depth)) : null;
+    }
+
     @Override
     public void prepare(MissionInit missionInit) {
         TextureHelper.setMobColours(mobColours);
         TextureHelper.setMiscTextureColours(miscColours);
+        TextureHelper.buildBlockColourTable();
 
         byte[] sky = this.cmParams != null ? this.cmParams.getSkyColour() : null;
         if (sky != null && sky.length >= 3) {
@@ -151,17 +311,64 @@ public class ColourMapProducerImplementation extends HandlerBase implements IVid
             }
         } catch (Throwable ignored) {}
         TextureHelper.setRespectOpacity(respectOpacity);
+        boolean singlePass = this.cmParams != null && this.cmParams.getSegmentationMode() == SegmentationMode.SINGLE_PASS;
+        TextureHelper.setSinglePassSegmentation(singlePass);
+        TextureHelper.setSegmentationRenderInterval(this.cmParams != null ? this.cmParams.getRenderInterval() : 1);
+        this.lastSegmentationFrame = -1;
         TextureHelper.setIsProducingColourMap(true);
+        int readbackBuffers = getReadbackBuffers();
+        this.readbackRing = (readbackBuffers > 0) ? new PixelPackRing(readbackBuffers) : null;
+        this.frameLatency = 0;
+        this.resampler = this.cmParams != null
+                ? FrameResampler.create(this.cmParams.getCrop(), this.cmParams.getResize(), true, GL11.GL_RGBA8, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE)
+                : null;
+        this.instanceChannel = this.cmParams != null && this.cmParams.isInstanceChannel();
+        if (this.instanceChannel && singlePass) {
+            // Telling entities apart means drawing each one on its own, which single-pass would also force on the RGB render.
+            LOGGER.error("instanceChannel needs the second-pass segmentation mode - sending no instance ids");
+            this.instanceChannel = false;
+        }
+        TextureHelper.setInstanceChannel(this.instanceChannel);
+        this.instanceRing = (this.instanceChannel && readbackBuffers > 0) ? new PixelPackRing(readbackBuffers) : null;
+        this.instanceResampler = this.instanceChannel
+                ? FrameResampler.create(this.cmParams.getCrop(), this.cmParams.getResize(), true, GL30.GL_R16, GL11.GL_RED, GL11.GL_UNSIGNED_SHORT)
+                : null;
+        this.instanceTables.clear();
+        this.instanceTables.addAll(Collections.nCopies(Math.max(1, readbackBuffers), (List<TextureHelper.EntityInstance>) null));
+        this.instanceReads = 0;
+        this.deliveredInstances = null;
     }
 
     @Override
     public void cleanup() {
+        if (this.readbackRing != null) {
+            this.readbackRing.destroy();
+            this.readbackRing = null;
+        }
+        if (this.resampler != null) {
+            this.resampler.destroy();
+            this.resampler = null;
+        }
+        if (this.instanceRing != null) {
+            this.instanceRing.destroy();
+            this.instanceRing = null;
+        }
+        if (this.instanceResampler != null) {
+            this.instanceResampler.destroy();
+            this.instanceResampler = null;
+        }
+        this.instanceTables.clear();
+        this.deliveredInstances = null;
+        TextureHelper.logSegmentationStats();
         TextureHelper.setIsProducingColourMap(false);
         TextureHelper.setRespectOpacity(false);
+        TextureHelper.setSinglePassSegmentation(false);
+        TextureHelper.setInstanceChannel(false);
         TextureHelper.setSkyRenderer(null);
         // Clear colour mappings and segmentation state and release FBO via helper.
         TextureHelper.setMobColours(null);
         TextureHelper.setMiscTextureColours(null);
+        TextureHelper.clearBlockColourTable();
         TextureHelper.resetSegmentationState();
         TextureHelper.destroySegmentationFramebuffer();
         mobColours.clear();
@@ -178,16 +385,10 @@ public class ColourMapProducerImplementation extends HandlerBase implements IVid
                 height = main.textureHeight;
             }
         }
-        width = Math.max(1, width);
-        height = Math.max(1, height);
+        double scale = (this.cmParams != null && this.cmParams.getRenderScale() != null) ? this.cmParams.getRenderScale().doubleValue() : 1.0;
+        width = Math.max(1, (int) Math.round(width * scale));
+        height = Math.max(1, (int) Math.round(height * scale));
         TextureHelper.ensureSegmentationFramebuffer(width, height);
         return TextureHelper.getSegmentationFramebuffer();
     }
-
-    private ByteBuffer ensureReadbackBuffer(int byteCount) {
-        if (this.readbackBuffer == null || this.readbackBuffer.capacity() < byteCount) {
-            this.readbackBuffer = BufferUtils.createByteBuffer(byteCount);
-        }
-        return this.readbackBuffer;
-    }
 }
@@ -64,10 +64,15 @@ public abstract class CommandBase extends HandlerBase implements ICommandHandler
 
         // We expect the first word to be the command, and the rest of the string to be parameters, if present.
         String[] parms = command.split(" ", 2);
-        String verb = parms[0].toLowerCase();
-        String parameter = (parms.length > 1) ? parms[1] : "";
+        return execute(parms[0], (parms.length > 1) ? parms[1] : "", missionInit);
+    }
+
+    @Override
+    public boolean execute(String verb, String parameter, MissionInit missionInit)
+    {
+        verb = verb.toLowerCase();
 
-        // Also chuck out any commands which aren't on our allow list / are on our deny list:
+        // Chuck out any commands which aren't on our allow list / are on our deny list:
         if (!isCommandAllowed(verb))
         {
             return false;
@@ -5,12 +5,19 @@ import net.minecraft.client.MinecraftClient;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
 import java.util.Map;
 
 
 public class CommandForDiscreteRobotNavigationImplementation extends CommandBase {
 
     private static final Logger LOGGER = LogManager.getLogger(CommandForDiscreteRobotNavigationImplementation.class.getName());
+    private static final Map<String, String> MOVES = Map.of(
+            "movewest", "~-1 ~ ~",
+            "moveeast", "~1 ~ ~",
+            "movenorth", "~ ~ ~-1",
+            "movesouth", "~ ~ ~1"
+    );
 
     private boolean moveAgent(String movement){
         try {
@@ -26,6 +33,12 @@ public class CommandForDiscreteRobotNavigationImplementation extends CommandBase
     }
 
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return MOVES.keySet();
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit) {
 
@@ -33,20 +46,14 @@ public class CommandForDiscreteRobotNavigationImplementation extends CommandBase
         {
             return false;
         }
-        Map<String, String> moveMap = Map.of(
-                "movewest", "~-1 ~ ~",
-                "moveeast", "~1 ~ ~",
-                "movenorth", "~ ~ ~-1",
-                "movesouth", "~ ~ ~1"
-        );
         String parameters[] = parameter.split(" ");
         if (parameters.length != 1) return false;
         // Now parse the command:
         String lowerVerb = verb.toLowerCase();
-        if (!moveMap.containsKey(lowerVerb)){
+        if (!MOVES.containsKey(lowerVerb)){
             return false;
         }
-        return moveAgent(moveMap.get(lowerVerb));
+        return moveAgent(MOVES.get(lowerVerb));
     }
 
     @Override
@@ -30,6 +30,8 @@ import io.singularitynet.mixin.GameOptionsMixin;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 
 /** KeyBinding subclass which opens up the Minecraft keyhandling to external agents for a particular key.<br>
@@ -396,6 +398,12 @@ public class CommandForKey extends CommandBase
         // will behave normally anyway.
     }
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return (this.keyHook != null) ? List.of(this.keyHook.getCommandString()) : List.of();
+    }
+
     @Override
     public boolean onExecute(String verb, String parameter, MissionInit missionInit)
     {
@@ -32,6 +32,9 @@ import net.minecraft.client.network.ClientPlayerEntity;
 import net.minecraft.client.option.GameOptions;
 import net.minecraft.util.math.MathHelper;
 
+import java.util.Collection;
+import java.util.List;
+
 /** Class which overrides movement of the Minecraft player and exposes control of it to external agents.<br>
  * This allows the player to act as a robot with the ability to move backwards/forwards, strafe left/right, and turn clockwise/anticlockwise,
  * with a camera that is able to pivot up/down but not turn independently of the agent's body.
@@ -201,6 +204,14 @@ public class CommandForWheeledRobotNavigationImplementation extends CommandBase
         overrideKeyboardInput = b;
     }
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of(ContinuousMovementCommand.MOVE.value(), ContinuousMovementCommand.STRAFE.value(),
+                ContinuousMovementCommand.PITCH.value(), ContinuousMovementCommand.TURN.value(),
+                ContinuousMovementCommand.JUMP.value(), ContinuousMovementCommand.CROUCH.value());
+    }
+
     @Override
     public boolean onExecute(String verb, String parameter, MissionInit missionInit)
     {
@@ -21,7 +21,9 @@ import net.minecraft.util.math.MathHelper;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /** Class which overrides movement of the Minecraft player and exposes control of it to external agents.<br>
@@ -42,6 +44,12 @@ public class CommandForWheeledRobotNavigationMobImplementationServer extends Com
         runCommand(msg);
     }
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of();   // Commands are handled by the client half.
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit) {
         return false;
@@ -23,14 +23,25 @@ import io.singularitynet.MissionHandlerInterfaces.ICommandHandler;
 import io.singularitynet.projectmalmo.MissionInit;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 
 /** Composite class that manages a set of ICommandHandler objects.<br>
+ * Once installed, commands are dispatched through an index of the verbs each child accepts, so a command only
+ * reaches the children that could handle it - plus any child that can't say which verbs it takes.
  */
 public class CommandGroup extends CommandBase
 {
+    private static final ICommandHandler[] NO_HANDLERS = new ICommandHandler[0];
+
     private ArrayList<ICommandHandler> handlers;
+    private Map<String, ICommandHandler[]> verbIndex = null;   // Verb -> children to try, in order; null until installed.
+    private ICommandHandler[] anyVerbHandlers = NO_HANDLERS;    // Children to try for a verb nobody has claimed.
     private boolean isOverriding = false;
     private boolean shareParametersWithChildren = false;
 
@@ -63,12 +74,20 @@ public class CommandGroup extends CommandBase
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit)
     {
-        for (ICommandHandler han : this.handlers)
+        if (this.verbIndex == null)
         {
-            if (han.execute(verb + " " + parameter, missionInit))
+            // Not installed, so no index - fall back to asking everyone.
+            for (ICommandHandler han : this.handlers)
             {
-                return true;
+                if (han.execute(verb, parameter, missionInit))
+                    return true;
             }
+            return false;
+        }
+        for (ICommandHandler han : this.verbIndex.getOrDefault(verb, this.anyVerbHandlers))
+        {
+            if (han.execute(verb, parameter, missionInit))
+                return true;
         }
         return false;
     }
@@ -80,6 +99,8 @@ public class CommandGroup extends CommandBase
         {
             han.install(missionInit);
         }
+        // Some handlers (eg CommandForKey) only know their verbs once installed.
+        buildVerbIndex();
     }
 
     @Override
@@ -89,6 +110,62 @@ public class CommandGroup extends CommandBase
         {
             han.deinstall(missionInit);
         }
+        this.verbIndex = null;
+        this.anyVerbHandlers = NO_HANDLERS;
+    }
+
+    private void buildVerbIndex()
+    {
+        // Lower-case everything, since CommandBase lower-cases the verbs it dispatches.
+        List<Set<String>> childVerbs = new ArrayList<Set<String>>();
+        Set<String> allVerbs = new HashSet<String>();
+        List<ICommandHandler> anyVerb = new ArrayList<ICommandHandler>();
+        for (ICommandHandler han : this.handlers)
+        {
+            Collection<String> verbs = han.getVerbs();
+            Set<String> lowerVerbs = null;
+            if (verbs == null)
+            {
+                anyVerb.add(han);
+            }
+            else
+            {
+                lowerVerbs = new HashSet<String>();
+                for (String verb : verbs)
+                    lowerVerbs.add(verb.toLowerCase());
+                allVerbs.addAll(lowerVerbs);
+            }
+            childVerbs.add(lowerVerbs);
+        }
+
+        // Each verb keeps the children's original order, so the first child to claim a command still wins.
+        Map<String, ICommandHandler[]> index = new HashMap<String, ICommandHandler[]>();
+        for (String verb : allVerbs)
+        {
+            List<ICommandHandler> candidates = new ArrayList<ICommandHandler>();
+            for (int i = 0; i < this.handlers.size(); i++)
+            {
+                if (childVerbs.get(i) == null || childVerbs.get(i).contains(verb))
+                    candidates.add(this.handlers.get(i));
+            }
+            index.put(verb, candidates.toArray(NO_HANDLERS));
+        }
+        this.verbIndex = index;
+        this.anyVerbHandlers = anyVerb.toArray(NO_HANDLERS);
+    }
+
+    @Override
+    public Collection<String> getVerbs()
+    {
+        Set<String> verbs = new HashSet<String>();
+        for (ICommandHandler han : this.handlers)
+        {
+            Collection<String> childVerbs = han.getVerbs();
+            if (childVerbs == null)
+                return null;    // One child takes anything, so the group does too.
+            verbs.addAll(childVerbs);
+        }
+        return verbs;
     }
 
     @Override
@@ -0,0 +1,146 @@
+package io.singularitynet.MissionHandlers;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import io.singularitynet.projectmalmo.DepthFormat;
+import io.singularitynet.projectmalmo.DepthProducer;
+import io.singularitynet.projectmalmo.DepthScaling;
+import io.singularitynet.projectmalmo.FrameCapturePolicy;
+import io.singularitynet.projectmalmo.FrameCrop;
+import io.singularitynet.projectmalmo.FrameDropPolicy;
+import io.singularitynet.projectmalmo.FrameHeaderFormat;
+import io.singularitynet.projectmalmo.FrameResize;
+import io.singularitynet.projectmalmo.MissionInit;
+import io.singularitynet.utils.FullscreenPass;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.Framebuffer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.joml.Matrix4f;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import java.math.BigDecimal;
+
+/**
+ * Sends the depth buffer the world was rendered with as one channel of linear depth per pixel.<br>
+ * The non-linear depth attachment of the main framebuffer is linearised on the GPU into a single-channel
+ * float or 16-bit target, so the readback is already in the format the agent receives.
+ */
+public class DepthProducerImplementation extends ShaderPassProducer
+{
+    private static final Logger LOGGER = LogManager.getLogger(DepthProducerImplementation.class);
+    // Used if the projection matrix doesn't give us usable clip planes.
+    private static final float DEFAULT_NEAR_PLANE = 0.05f;
+
+    private DepthProducer depthParams;
+
+    @Override
+    public boolean parseParameters(Object params)
+    {
+        if (params == null || !(params instanceof DepthProducer))
+            return false;
+        this.depthParams = (DepthProducer) params;
+        return true;
+    }
+
+    @Override
+    public VideoType getVideoType()
+    {
+        return VideoType.DEPTH_MAP;
+    }
+
+    private boolean isQuantised()
+    {
+        return this.depthParams.getDepthFormat() == DepthFormat.UINT_16;
+    }
+
+    @Override
+    public int getBytesPerChannel() { return isQuantised() ? 2 : 4; }
+
+    @Override
+    protected String getShaderName() { return "depth_linearise"; }
+
+    @Override
+    protected int getInternalFormat() { return isQuantised() ? GL30.GL_R16 : GL30.GL_R32F; }
+
+    @Override
+    protected int getReadType() { return isQuantised() ? GL11.GL_UNSIGNED_SHORT : GL11.GL_FLOAT; }
+
+    @Override
+    protected int getSourceTexture(Framebuffer framebuffer) { return framebuffer.getDepthAttachment(); }
+
+    // Depths are never blended - a filtered edge would be a depth that exists nowhere in the scene.
+    @Override
+    protected boolean isResampledNearest() { return true; }
+
+    @Override
+    protected FrameCrop getCrop() { return this.depthParams.getCrop(); }
+
+    @Override
+    protected FrameResize getResize() { return this.depthParams.getResize(); }
+
+    @Override
+    protected int getRequestedReadbackBuffers() { return this.depthParams.getReadbackBuffers(); }
+
+    @Override
+    public FrameCapturePolicy getCapturePolicy() { return this.depthParams.getCapturePolicy(); }
+
+    @Override
+    public int getCaptureInterval() { return this.depthParams.getCaptureInterval(); }
+
+    @Override
+    public BigDecimal getTargetFps() { return this.depthParams.getTargetFps(); }
+
+    @Override
+    public int getSendQueueLength() { return this.depthParams.getSendQueueLength(); }
+
+    @Override
+    public FrameDropPolicy getDropPolicy() { return this.depthParams.getDropPolicy(); }
+
+    @Override
+    public FrameHeaderFormat getHeaderFormat() { return this.depthParams.getHeaderFormat(); }
+
+    @Override
+    public int getWidth() { return this.depthParams.getWidth(); }
+
+    @Override
+    public int getHeight() { return this.depthParams.getHeight(); }
+
+    /** Linearise between the clip planes of the projection the world was rendered with. */
+    @Override
+    protected void setUniforms(FullscreenPass pass)
+    {
+        // Recover the clip planes from the projection matrix:
+        // m22 = -(f+n)/(f-n) and m32 = -2fn/(f-n).
+        Matrix4f projection = RenderSystem.getProjectionMatrix();
+        float near = projection.m32() / (projection.m22() - 1.0f);
+        float far = projection.m32() / (projection.m22() + 1.0f);
+        if (!Float.isFinite(near) || !Float.isFinite(far) || near <= 0 || far <= near)
+        {
+            near = DEFAULT_NEAR_PLANE;
+            far = MinecraftClient.getInstance().gameRenderer.getFarPlaneDistance();
+        }
+        float min = 0.0f;
+        float max = 1.0f;
+        DepthScaling scaling = this.depthParams.getDepthScaling();
+        if (scaling != null)
+        {
+            min = scaling.getMin().floatValue();
+            max = scaling.getMax().floatValue();
+        }
+
+        GL20.glUniform1f(pass.getUniform("nearPlane"), near);
+        GL20.glUniform1f(pass.getUniform("farPlane"), far);
+        GL20.glUniform1f(pass.getUniform("rangeMin"), near + min * (far - near));
+        GL20.glUniform1f(pass.getUniform("rangeMax"), near + max * (far - near));
+        GL20.glUniform1i(pass.getUniform("quantise"), isQuantised() ? 1 : 0);
+    }
+
+    @Override
+    public void prepare(MissionInit missionInit)
+    {
+        super.prepare(missionInit);
+        LOGGER.info("DepthProducer: {} depth, {} readback buffers", this.depthParams.getDepthFormat().value(), getReadbackBuffers());
+    }
+}
@@ -29,6 +29,7 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import net.minecraft.util.math.BlockPos;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -55,6 +56,20 @@ public class InventoryCommandsImplementation extends CommandGroup implements IVe
     }
 
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        // Our own verbs, on top of whatever the hotbar keys in the group take.
+        Collection<String> childVerbs = super.getVerbs();
+        if (childVerbs == null)
+            return null;
+        List<String> verbs = new ArrayList<String>(childVerbs);
+        verbs.add(InventoryCommand.SWAP_INVENTORY_ITEMS.value());
+        verbs.add(InventoryCommand.COMBINE_INVENTORY_ITEMS.value());
+        verbs.add(InventoryCommand.DISCARD_CURRENT_ITEM.value());
+        return verbs;
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit)
     {
@@ -14,6 +14,7 @@ import net.minecraft.util.math.BlockPos;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -216,6 +217,12 @@ public class InventoryCommandsImplementationServer extends CommandBase implement
         return returnStacks;
     }
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of();   // Commands are handled by the client half.
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit) {
         throw new RuntimeException("InventoryCommandsImplementationServer.onExecute() should never be called!");
@@ -0,0 +1,85 @@
+package io.singularitynet.MissionHandlers;
+
+import io.singularitynet.projectmalmo.FrameCapturePolicy;
+import io.singularitynet.projectmalmo.FrameCrop;
+import io.singularitynet.projectmalmo.FrameDropPolicy;
+import io.singularitynet.projectmalmo.FrameHeaderFormat;
+import io.singularitynet.projectmalmo.FrameResize;
+import io.singularitynet.projectmalmo.LuminanceProducer;
+import net.minecraft.client.gl.Framebuffer;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import java.math.BigDecimal;
+
+/**
+ * Sends the rendered frame as 8-bit grayscale.<br>
+ * The luma is computed on the GPU into a single-channel R8 target, so only one byte per pixel is read back and sent.
+ */
+public class LuminanceProducerImplementation extends ShaderPassProducer
+{
+    private LuminanceProducer lumParams;
+
+    @Override
+    public boolean parseParameters(Object params)
+    {
+        if (params == null || !(params instanceof LuminanceProducer))
+            return false;
+        this.lumParams = (LuminanceProducer) params;
+        return true;
+    }
+
+    @Override
+    public VideoType getVideoType()
+    {
+        return VideoType.LUMINANCE;
+    }
+
+    @Override
+    protected String getShaderName() { return "luminance"; }
+
+    @Override
+    protected int getInternalFormat() { return GL30.GL_R8; }
+
+    @Override
+    protected int getReadType() { return GL11.GL_UNSIGNED_BYTE; }
+
+    @Override
+    protected int getSourceTexture(Framebuffer framebuffer) { return framebuffer.getColorAttachment(); }
+
+    @Override
+    protected boolean isResampledNearest() { return false; }
+
+    @Override
+    protected FrameCrop getCrop() { return this.lumParams.getCrop(); }
+
+    @Override
+    protected FrameResize getResize() { return this.lumParams.getResize(); }
+
+    @Override
+    protected int getRequestedReadbackBuffers() { return this.lumParams.getReadbackBuffers(); }
+
+    @Override
+    public FrameCapturePolicy getCapturePolicy() { return this.lumParams.getCapturePolicy(); }
+
+    @Override
+    public int getCaptureInterval() { return this.lumParams.getCaptureInterval(); }
+
+    @Override
+    public BigDecimal getTargetFps() { return this.lumParams.getTargetFps(); }
+
+    @Override
+    public int getSendQueueLength() { return this.lumParams.getSendQueueLength(); }
+
+    @Override
+    public FrameDropPolicy getDropPolicy() { return this.lumParams.getDropPolicy(); }
+
+    @Override
+    public FrameHeaderFormat getHeaderFormat() { return this.lumParams.getHeaderFormat(); }
+
+    @Override
+    public int getWidth() { return this.lumParams.getWidth(); }
+
+    @Override
+    public int getHeight() { return this.lumParams.getHeight(); }
+}
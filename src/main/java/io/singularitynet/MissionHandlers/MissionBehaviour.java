@@ -40,6 +40,7 @@ public class MissionBehaviour implements IMissionBehaviour {
     public IWorldDecorator worldDecorator = null;
     public IWorldGenerator worldGenerator = null;
     public IWantToQuit quitProducer = null;
+    public VideoBundleImplementation videoBundle = null;
     private String failedHandlers = "";
 
     /** Create instances of the various mission handlers, according to the specifications in the MissionInit object.<br>
@@ -156,6 +157,8 @@ public class MissionBehaviour implements IMissionBehaviour {
 
         if (handler instanceof IVideoProducer)
             addVideoProducer((IVideoProducer)handler);
+        if (handler instanceof VideoBundleImplementation)
+            this.videoBundle = (VideoBundleImplementation)handler;
         if (handler instanceof IAudioProducer)
             addAudioProducer((IAudioProducer)handler);
         if (handler instanceof ICommandHandler)
@@ -288,6 +291,7 @@ public class MissionBehaviour implements IMissionBehaviour {
         this.rewardProducer = null;
         this.worldDecorator = null;
         this.quitProducer = null;
+        this.videoBundle = null;
     }
 
     public static IWorldGenerator createWorldGenerator(MissionInit missionInit)
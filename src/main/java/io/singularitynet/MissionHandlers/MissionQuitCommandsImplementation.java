@@ -28,6 +28,9 @@ import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.network.ClientPlayerEntity;
 import net.minecraft.text.Text;
 
+import java.util.Collection;
+import java.util.List;
+
 /** Quit command allows for the agent to abort its mission at any time. */
 public class MissionQuitCommandsImplementation  extends CommandBase implements ICommandHandler
 {
@@ -35,6 +38,12 @@ public class MissionQuitCommandsImplementation  extends CommandBase implements I
     private boolean iWantToQuit;
     protected MissionQuitCommands quitcomParams;
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of(MissionQuitCommand.QUIT.value());
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit)
     {
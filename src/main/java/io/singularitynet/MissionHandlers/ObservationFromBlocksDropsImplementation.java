@@ -68,8 +68,18 @@ public class ObservationFromBlocksDropsImplementation extends HandlerBase implem
     @Override
     public boolean execute(String command, MissionInit currentMissionInit) {
         String comm[] = command.split(" ", 2);
-        if (comm.length == 2 && comm[0].equalsIgnoreCase(ObservationFromBlocksDrop.BLOCKDROPS.value())) {
-            if (!comm[1].equalsIgnoreCase("off")) {
+        return comm.length == 2 && execute(comm[0], comm[1], currentMissionInit);
+    }
+
+    @Override
+    public Collection<String> getVerbs() {
+        return List.of(ObservationFromBlocksDrop.BLOCKDROPS.value());
+    }
+
+    @Override
+    public boolean execute(String verb, String parameter, MissionInit currentMissionInit) {
+        if (verb.equalsIgnoreCase(ObservationFromBlocksDrop.BLOCKDROPS.value())) {
+            if (!parameter.isEmpty() && !parameter.equalsIgnoreCase("off")) {
                 LOGGER.debug("setting sendRec = true in ObservationFromBlocksDrops");
                 this.sendRec = true;
                 return true;
@@ -0,0 +1,39 @@
+package io.singularitynet.MissionHandlers;
+
+import com.google.gson.JsonObject;
+import io.singularitynet.MissionHandlerInterfaces.IObservationProducer;
+import io.singularitynet.projectmalmo.MissionInit;
+import io.singularitynet.utils.TextureHelper;
+
+import java.util.Map;
+
+/** Sends the colour map's legend - which colour each block type is drawn with - once per mission.
+ */
+public class ObservationFromColourMapLegendImplementation extends HandlerBase implements IObservationProducer
+{
+    private boolean sent;
+
+    @Override
+    public void prepare(MissionInit missionInit) { this.sent = false; }
+
+    @Override
+    public void cleanup() {}
+
+    @Override
+    public void writeObservationsToJSON(JsonObject json, MissionInit missionInit)
+    {
+        if (this.sent)
+            return;
+        // Empty until the colour map producer has built its table.
+        Map<String, Integer> blocks = TextureHelper.getBlockColourLegend();
+        if (blocks.isEmpty())
+            return;
+        JsonObject jsonBlocks = new JsonObject();
+        for (Map.Entry<String, Integer> entry : blocks.entrySet())
+            jsonBlocks.addProperty(entry.getKey(), entry.getValue());
+        JsonObject legend = new JsonObject();
+        legend.add("blocks", jsonBlocks);
+        json.add("ColourMapLegend", legend);
+        this.sent = true;
+    }
+}
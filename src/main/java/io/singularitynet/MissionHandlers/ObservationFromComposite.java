@@ -20,10 +20,12 @@
 package io.singularitynet.MissionHandlers;
 
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import io.singularitynet.MissionHandlerInterfaces.IObservationProducer;
 import io.singularitynet.projectmalmo.MissionInit;
 
@@ -60,6 +62,18 @@ public class ObservationFromComposite extends HandlerBase implements IObservatio
         }
     }
 
+    @Override
+    public void writeObservations(JsonWriter writer, JsonObject json, MissionInit missionInit) throws IOException
+    {
+        if (this.producers == null)
+            return;
+
+        for (IObservationProducer producer : this.producers)
+        {
+            producer.writeObservations(writer, json, missionInit);
+        }
+    }
+
     @Override
     public void prepare(MissionInit missionInit)
     {
@@ -18,6 +18,7 @@ import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 
@@ -126,10 +127,20 @@ public class ObservationFromFindBlockImplementation extends HandlerBase implemen
     @Override
     public boolean execute(String command, MissionInit currentMissionInit) {
         String comm[] = command.split(" ", 2);
-        if (comm.length == 2 && comm[0].equalsIgnoreCase(ObservationFromFindBlck.FIND_BLOCK.value()) &&
-                !comm[1].equalsIgnoreCase("off")) {
+        return comm.length == 2 && execute(comm[0], comm[1], currentMissionInit);
+    }
+
+    @Override
+    public Collection<String> getVerbs() {
+        return List.of(ObservationFromFindBlck.FIND_BLOCK.value());
+    }
+
+    @Override
+    public boolean execute(String verb, String parameter, MissionInit currentMissionInit) {
+        if (verb.equalsIgnoreCase(ObservationFromFindBlck.FIND_BLOCK.value()) &&
+                !parameter.isEmpty() && !parameter.equalsIgnoreCase("off")) {
             this.sendRec = true;
-            this.block_name = comm[1];
+            this.block_name = parameter;
             return true;
         }
         return false;
@@ -20,6 +20,7 @@
 package io.singularitynet.MissionHandlers;
 
 import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import io.singularitynet.Client.VereyaModClient;
 import io.singularitynet.MissionHandlerInterfaces.IObservationProducer;
 import io.singularitynet.projectmalmo.GridDefinition;
@@ -30,6 +31,7 @@ import io.singularitynet.utils.JSONWorldDataHelper.GridDimensions;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.entity.mob.MobEntity;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -58,18 +60,37 @@ public class ObservationFromGridImplementation extends HandlerBase implements IO
             for (SimpleGridDef sgd : environs)
             {
                 JSONWorldDataHelper.buildGridData(json, sgd.getEnvirons(), MinecraftClient.getInstance().player, sgd.name);
-                JsonObject controllableEnities = json.getAsJsonObject(VereyaModClient.CONTROLLABLE);
-                if (controllableEnities != null) {
-                    for(MobEntity entity: VereyaModClient.getControllableEntities().values()){
-                        String uuid = entity.getUuidAsString();
-                        JsonObject entityJson = controllableEnities.getAsJsonObject(uuid);
-                        if (entityJson == null){
-                            entityJson = new JsonObject();
-                            controllableEnities.add(uuid, entityJson);
-                        }
-                        JSONWorldDataHelper.buildGridData(entityJson, sgd.getEnvirons(), entity, sgd.name);
-                    }
+                buildControllableGridData(json, sgd);
+            }
+        }
+    }
+
+    @Override
+    public void writeObservations(JsonWriter writer, JsonObject json, MissionInit currentMissionInit) throws IOException {
+        // The player's grids are streamed; the controllable mobs' go into the shared tree, to be merged with
+        // what other producers add for the same mobs.
+        List<SimpleGridDef> environs = this.environs;
+        if (environs != null)
+        {
+            for (SimpleGridDef sgd : environs)
+            {
+                JSONWorldDataHelper.writeGridData(writer, sgd.getEnvirons(), MinecraftClient.getInstance().player, sgd.name);
+                buildControllableGridData(json, sgd);
+            }
+        }
+    }
+
+    private void buildControllableGridData(JsonObject json, SimpleGridDef sgd) {
+        JsonObject controllableEnities = json.getAsJsonObject(VereyaModClient.CONTROLLABLE);
+        if (controllableEnities != null) {
+            for(MobEntity entity: VereyaModClient.getControllableEntities().values()){
+                String uuid = entity.getUuidAsString();
+                JsonObject entityJson = controllableEnities.getAsJsonObject(uuid);
+                if (entityJson == null){
+                    entityJson = new JsonObject();
+                    controllableEnities.add(uuid, entityJson);
                 }
+                JSONWorldDataHelper.buildGridData(entityJson, sgd.getEnvirons(), entity, sgd.name);
             }
         }
     }
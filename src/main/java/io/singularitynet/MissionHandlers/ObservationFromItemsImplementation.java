@@ -12,6 +12,7 @@ import net.minecraft.registry.Registry;
 import io.singularitynet.projectmalmo.ObservationFromItem;
 
 
+import java.util.Collection;
 import java.util.List;
 import static net.minecraft.registry.Registries.ITEM;
 
@@ -35,8 +36,18 @@ public class ObservationFromItemsImplementation extends HandlerBase implements I
     @Override
     public boolean execute(String command, MissionInit currentMissionInit) {
         String comm[] = command.split(" ", 2);
-        if (comm.length == 2 && comm[0].equalsIgnoreCase(ObservationFromItem.ITEM_LIST.value())){
-          if (!comm[1].equalsIgnoreCase("off")) {
+        return comm.length == 2 && execute(comm[0], comm[1], currentMissionInit);
+    }
+
+    @Override
+    public Collection<String> getVerbs() {
+        return List.of(ObservationFromItem.ITEM_LIST.value());
+    }
+
+    @Override
+    public boolean execute(String verb, String parameter, MissionInit currentMissionInit) {
+        if (verb.equalsIgnoreCase(ObservationFromItem.ITEM_LIST.value())){
+          if (!parameter.isEmpty() && !parameter.equalsIgnoreCase("off")) {
               this.sendRec = true;
               return true;
           }
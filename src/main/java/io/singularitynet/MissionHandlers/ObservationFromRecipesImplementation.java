@@ -13,6 +13,7 @@ import net.minecraft.recipe.Ingredient;
 import net.minecraft.recipe.RecipeEntry;
 import net.minecraft.util.collection.DefaultedList;
 
+import java.util.Collection;
 import java.util.List;
 
 class ObservationFromRecipesImplementation extends HandlerBase implements IObservationProducer, ICommandHandler {
@@ -85,8 +86,18 @@ class ObservationFromRecipesImplementation extends HandlerBase implements IObser
     @Override
     public boolean execute(String command, MissionInit currentMissionInit) {
         String comm[] = command.split(" ", 2);
-        if (comm.length == 2 && comm[0].equalsIgnoreCase(ObservationFromRecipe.RECIPES.value()) &&
-                !comm[1].equalsIgnoreCase("off")) {
+        return comm.length == 2 && execute(comm[0], comm[1], currentMissionInit);
+    }
+
+    @Override
+    public Collection<String> getVerbs() {
+        return List.of(ObservationFromRecipe.RECIPES.value());
+    }
+
+    @Override
+    public boolean execute(String verb, String parameter, MissionInit currentMissionInit) {
+        if (verb.equalsIgnoreCase(ObservationFromRecipe.RECIPES.value()) &&
+                !parameter.isEmpty() && !parameter.equalsIgnoreCase("off")) {
             this.sendRec = true;
             return true;
         }
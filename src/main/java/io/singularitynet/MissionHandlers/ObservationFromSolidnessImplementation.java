@@ -12,6 +12,7 @@ import net.minecraft.registry.Registry;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
 import java.util.List;
 
 import static net.minecraft.registry.Registries.BLOCK;
@@ -35,8 +36,18 @@ public class ObservationFromSolidnessImplementation extends HandlerBase implemen
     @Override
     public boolean execute(String command, MissionInit currentMissionInit) {
         String comm[] = command.split(" ", 2);
-        if (comm.length == 2 && comm[0].equalsIgnoreCase(ObservationFromSolid.SOLID.value()) &&
-                !comm[1].equalsIgnoreCase("off")) {
+        return comm.length == 2 && execute(comm[0], comm[1], currentMissionInit);
+    }
+
+    @Override
+    public Collection<String> getVerbs() {
+        return List.of(ObservationFromSolid.SOLID.value());
+    }
+
+    @Override
+    public boolean execute(String verb, String parameter, MissionInit currentMissionInit) {
+        if (verb.equalsIgnoreCase(ObservationFromSolid.SOLID.value()) &&
+                !parameter.isEmpty() && !parameter.equalsIgnoreCase("off")) {
             this.sendRec = true;
             LOGGER.debug("ObservationFromSolidnessImplementation set Flag");
             return true;
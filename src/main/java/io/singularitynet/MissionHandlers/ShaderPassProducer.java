@@ -0,0 +1,165 @@
+package io.singularitynet.MissionHandlers;
+
+import io.singularitynet.MissionHandlerInterfaces.IVideoProducer;
+import io.singularitynet.projectmalmo.FrameCrop;
+import io.singularitynet.projectmalmo.FrameResize;
+import io.singularitynet.projectmalmo.MissionInit;
+import io.singularitynet.utils.FrameResampler;
+import io.singularitynet.utils.FullscreenPass;
+import io.singularitynet.utils.PixelPackRing;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.Framebuffer;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Base class for video producers that send one channel computed on the GPU from the rendered frame.<br>
+ * Each frame, a fragment shader is run over a texture of the main framebuffer into a single-channel target,
+ * which is optionally cropped/scaled and then read back, synchronously or through a ring of pixel-pack buffers.
+ * Subclasses say which shader, target format and source texture to use, and set the shader's uniforms.
+ */
+public abstract class ShaderPassProducer extends HandlerBase implements IVideoProducer
+{
+    private FullscreenPass pass;
+    // Ring of pixel-pack buffers for asynchronous readback; null when reading synchronously.
+    private PixelPackRing readbackRing;
+    private int frameLatency = 0;
+    private int readbackBuffersOverride = -1;  // Set when a frame bundle needs all its producers equally deep.
+    // Crops/scales the frame on the GPU before readback; null if the agent wants the full frame.
+    private FrameResampler resampler;
+    private final int[] frameSize = new int[2];
+
+    /** Get the name of the fragment shader run over the source texture.*/
+    protected abstract String getShaderName();
+
+    /** Get the internal format of the single-channel target the shader renders into - eg GL_R8.*/
+    protected abstract int getInternalFormat();
+
+    /** Get the GL type the target is read back as - eg GL_UNSIGNED_BYTE.*/
+    protected abstract int getReadType();
+
+    /** Get the texture of the main framebuffer the shader reads.*/
+    protected abstract int getSourceTexture(Framebuffer framebuffer);
+
+    /** Whether cropping/scaling must pick the nearest pixel rather than filter - eg for values that can't be blended.*/
+    protected abstract boolean isResampledNearest();
+
+    protected abstract FrameCrop getCrop();
+
+    protected abstract FrameResize getResize();
+
+    /** Get the number of readback buffers asked for in the producer's parameters.*/
+    protected abstract int getRequestedReadbackBuffers();
+
+    /** Set the shader's uniforms for this frame; the pass's program is in use.*/
+    protected void setUniforms(FullscreenPass pass) {}
+
+    @Override
+    public int getReadbackBuffers()
+    {
+        return (this.readbackBuffersOverride >= 0) ? this.readbackBuffersOverride : getRequestedReadbackBuffers();
+    }
+
+    @Override
+    public void setReadbackBuffers(int buffers) { this.readbackBuffersOverride = buffers; }
+
+    @Override
+    public int getFrameLatency() { return this.frameLatency; }
+
+    @Override
+    public int[] writeFrame(MissionInit missionInit, ByteBuffer buffer)
+    {
+        Framebuffer framebuffer = MinecraftClient.getInstance().getFramebuffer();
+        int sourceWidth = framebuffer.textureWidth;
+        int sourceHeight = framebuffer.textureHeight;
+        int width = sourceWidth;
+        int height = sourceHeight;
+        if (this.resampler != null)
+        {
+            width = this.resampler.outputWidth(sourceWidth, sourceHeight);
+            height = this.resampler.outputHeight(sourceWidth, sourceHeight);
+        }
+        this.frameSize[0] = width;
+        this.frameSize[1] = height;
+        // Let the caller grow its buffer and ask again before we queue any GL work.
+        if (buffer.capacity() < width * height * getBytesPerChannel())
+            return this.frameSize;
+
+        boolean frameReady = false;
+        if (this.pass.begin(getSourceTexture(framebuffer), sourceWidth, sourceHeight))
+        {
+            setUniforms(this.pass);
+            this.pass.finish();
+
+            int previousFbo = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+            int previousReadBuffer = GL11.glGetInteger(GL11.GL_READ_BUFFER);
+            int previousAlignment = GL11.glGetInteger(GL11.GL_PACK_ALIGNMENT);
+            try
+            {
+                int readFbo = this.pass.getFramebuffer();
+                if (this.resampler != null)
+                    readFbo = this.resampler.resample(readFbo, sourceWidth, sourceHeight);
+                GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, readFbo);
+                GL11.glReadBuffer(GL30.GL_COLOR_ATTACHMENT0);
+                GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+                if (this.readbackRing == null)
+                {
+                    buffer.clear();
+                    GL11.glReadPixels(0, 0, width, height, GL11.GL_RED, getReadType(), buffer);
+                    this.frameLatency = 0;
+                    frameReady = true;
+                }
+                else if (this.readbackRing.readPixels(width, height, GL11.GL_RED, getReadType(), getBytesPerChannel(), buffer))
+                {
+                    this.frameLatency = this.readbackRing.getLatency();
+                    frameReady = true;
+                }
+            }
+            finally
+            {
+                GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, previousAlignment);
+                GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, previousFbo);
+                GL11.glReadBuffer(previousReadBuffer);
+            }
+        }
+
+        if (!frameReady)
+        {
+            this.frameSize[0] = 0;   // Ring still filling (or no shader) - nothing to send this frame.
+            this.frameSize[1] = 0;
+        }
+        return this.frameSize;
+    }
+
+    @Override
+    public void prepare(MissionInit missionInit)
+    {
+        this.pass = new FullscreenPass(getShaderName(), getInternalFormat(), GL11.GL_RED, getReadType());
+        this.resampler = FrameResampler.create(getCrop(), getResize(), isResampledNearest(), getInternalFormat(), GL11.GL_RED, getReadType());
+        int readbackBuffers = getReadbackBuffers();
+        this.readbackRing = (readbackBuffers > 0) ? new PixelPackRing(readbackBuffers) : null;
+        this.frameLatency = 0;
+    }
+
+    @Override
+    public void cleanup()
+    {
+        if (this.readbackRing != null)
+        {
+            this.readbackRing.destroy();
+            this.readbackRing = null;
+        }
+        if (this.pass != null)
+        {
+            this.pass.destroy();
+            this.pass = null;
+        }
+        if (this.resampler != null)
+        {
+            this.resampler.destroy();
+            this.resampler = null;
+        }
+    }
+}
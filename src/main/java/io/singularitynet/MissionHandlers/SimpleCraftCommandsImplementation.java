@@ -28,6 +28,8 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 
@@ -37,6 +39,12 @@ public class SimpleCraftCommandsImplementation extends CommandBase  implements I
     private static final Logger LOGGER = LogManager.getLogger(SimpleCraftCommandsImplementation.class.getName());
 
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of(SimpleCraftCommand.CRAFT.value());
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit)
     {
@@ -12,6 +12,7 @@ import net.minecraft.server.network.ServerPlayerEntity;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -98,6 +99,12 @@ public class SimpleCraftCommandsImplementationServer extends CommandBase  implem
         SidesMessageHandler.client2server.deregisterForMessage(this, VereyaMessageType.CLIENT_CRAFT);
     }
 
+    @Override
+    public Collection<String> getVerbs()
+    {
+        return List.of();   // Commands are handled by the client half.
+    }
+
     @Override
     protected boolean onExecute(String verb, String parameter, MissionInit missionInit) {
         throw new RuntimeException("calling onExecute on server");
@@ -0,0 +1,26 @@
+package io.singularitynet.MissionHandlers;
+
+import io.singularitynet.projectmalmo.VideoBundle;
+import io.singularitynet.projectmalmo.VideoBundleTransport;
+
+/** Asks for the agent's video producers to be captured together - see Client.FrameBundle.
+ */
+public class VideoBundleImplementation extends HandlerBase
+{
+    private VideoBundle params;
+
+    @Override
+    public boolean parseParameters(Object params)
+    {
+        if (!(params instanceof VideoBundle))
+            return false;
+        this.params = (VideoBundle) params;
+        return true;
+    }
+
+    /** True if the bundled frames should go out as one message on one connection. */
+    public boolean isSingleConnection()
+    {
+        return this.params != null && this.params.getTransport() == VideoBundleTransport.SINGLE_CONNECTION;
+    }
+}
@@ -2,22 +2,36 @@ package io.singularitynet.MissionHandlers;
 
 import com.mojang.blaze3d.platform.GlStateManager;
 import io.singularitynet.MissionHandlerInterfaces.IVideoProducer;
+import io.singularitynet.projectmalmo.FrameCapturePolicy;
+import io.singularitynet.projectmalmo.FrameDropPolicy;
+import io.singularitynet.projectmalmo.FrameHeaderFormat;
 import io.singularitynet.projectmalmo.MissionInit;
 import io.singularitynet.projectmalmo.VideoProducer;
+import io.singularitynet.utils.FrameResampler;
+import io.singularitynet.utils.PixelPackRing;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gl.Framebuffer;
-import org.lwjgl.BufferUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
 
+import java.math.BigDecimal;
 import java.nio.ByteBuffer;
-import java.nio.FloatBuffer;
 
 import static org.lwjgl.opengl.GL12.GL_BGRA;
 
 public class VideoProducerImplementation extends HandlerBase implements IVideoProducer
 {
+    private static final Logger LOGGER = LogManager.getLogger(VideoProducerImplementation.class);
+
     private VideoProducer videoParams;
-    private FloatBuffer depthBuffer;
+    // Ring of pixel-pack buffers for asynchronous readback; null when reading synchronously.
+    private PixelPackRing readbackRing;
+    private int frameLatency = 0;
+    private int readbackBuffersOverride = -1;  // Set when a frame bundle needs all its producers equally deep.
+    // Crops/scales the frame on the GPU before readback; null if the agent wants the full frame.
+    private FrameResampler resampler;
 
     @Override
     public boolean parseParameters(Object params)
@@ -25,7 +39,11 @@ public class VideoProducerImplementation extends HandlerBase implements IVideoPr
         if (params == null || !(params instanceof VideoProducer))
             return false;
         this.videoParams = (VideoProducer) params;
-
+        if (this.videoParams.isWantDepth())
+        {
+            LOGGER.error("VideoProducer: depth in the fourth channel is not supported - use a DepthProducer instead of want_depth");
+            return false;
+        }
         return true;
     }
 
@@ -38,14 +56,38 @@ public class VideoProducerImplementation extends HandlerBase implements IVideoPr
     @Override
     public int[] writeFrame(MissionInit missionInit, ByteBuffer buffer)
     {
-        if (!this.videoParams.isWantDepth())
-        {
-            return writeRGBFrame(buffer); // Just return the simple RGB, 3bpp image.
-        }
-        else
-            throw new RuntimeException("Depth map not implemented");
+        return writeRGBFrame(buffer);
     }
 
+    @Override
+    public int getReadbackBuffers() {
+        return (this.readbackBuffersOverride >= 0) ? this.readbackBuffersOverride : this.videoParams.getReadbackBuffers();
+    }
+
+    @Override
+    public void setReadbackBuffers(int buffers) { this.readbackBuffersOverride = buffers; }
+
+    @Override
+    public int getFrameLatency() { return this.frameLatency; }
+
+    @Override
+    public FrameCapturePolicy getCapturePolicy() { return this.videoParams.getCapturePolicy(); }
+
+    @Override
+    public int getCaptureInterval() { return this.videoParams.getCaptureInterval(); }
+
+    @Override
+    public BigDecimal getTargetFps() { return this.videoParams.getTargetFps(); }
+
+    @Override
+    public int getSendQueueLength() { return this.videoParams.getSendQueueLength(); }
+
+    @Override
+    public FrameDropPolicy getDropPolicy() { return this.videoParams.getDropPolicy(); }
+
+    @Override
+    public FrameHeaderFormat getHeaderFormat() { return this.videoParams.getHeaderFormat(); }
+
     @Override
     public int getWidth()
     {
@@ -60,24 +102,76 @@ public class VideoProducerImplementation extends HandlerBase implements IVideoPr
         Framebuffer framebuffer = MinecraftClient.getInstance().getFramebuffer();
         int i = framebuffer.textureWidth;
         int j = framebuffer.textureHeight;
-        GlStateManager._readPixels(0, 0, i, j, GL_BGRA, GL11.GL_UNSIGNED_BYTE, buffer);
+        if (this.resampler != null)
+        {
+            int sourceWidth = i;
+            i = this.resampler.outputWidth(sourceWidth, j);
+            j = this.resampler.outputHeight(sourceWidth, j);
+        }
         int[] sizes = new int[2];
         sizes[0] = i;
         sizes[1] = j;
+        // Let the caller grow its buffer and ask again before we queue any GL work.
+        if (buffer.capacity() < i * j * 4)
+            return sizes;
+
+        int previousFbo = 0;
+        if (this.resampler != null)
+        {
+            // Read the cropped/scaled copy instead of the main framebuffer.
+            int scaledFbo = this.resampler.resample(framebuffer.fbo, framebuffer.textureWidth, framebuffer.textureHeight);
+            previousFbo = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+            GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, scaledFbo);
+        }
+        try
+        {
+            if (this.readbackRing == null)
+            {
+                GlStateManager._readPixels(0, 0, i, j, GL_BGRA, GL11.GL_UNSIGNED_BYTE, buffer);
+                this.frameLatency = 0;
+            }
+            else if (this.readbackRing.readPixels(i, j, GL_BGRA, GL11.GL_UNSIGNED_BYTE, 4, buffer))
+            {
+                this.frameLatency = this.readbackRing.getLatency();
+            }
+            else
+            {
+                sizes[0] = 0;   // Ring still filling - nothing to send this frame.
+                sizes[1] = 0;
+            }
+        }
+        finally
+        {
+            if (this.resampler != null)
+                GlStateManager._glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, previousFbo);
+        }
         return sizes;
     }
 
     @Override
     public void prepare(MissionInit missionInit)
     {
-        boolean useDepth = this.videoParams.isWantDepth();
-        // Create a buffer for retrieving the depth map, if requested:
-        if (useDepth)
-            this.depthBuffer = BufferUtils.createFloatBuffer(this.videoParams.getWidth() * this.videoParams.getHeight());
+        int readbackBuffers = getReadbackBuffers();
+        this.readbackRing = (readbackBuffers > 0) ? new PixelPackRing(readbackBuffers) : null;
+        this.frameLatency = 0;
+        this.resampler = FrameResampler.create(this.videoParams.getCrop(), this.videoParams.getResize(), false,
+                GL11.GL_RGBA8, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE);
         // Set the requested camera position
         // Minecraft.getMinecraft().gameSettings.thirdPersonView = this.videoParams.getViewpoint();
     }
 
     @Override
-    public void cleanup() {}
-}
\ No newline at end of file
+    public void cleanup()
+    {
+        if (this.readbackRing != null)
+        {
+            this.readbackRing.destroy();
+            this.readbackRing = null;
+        }
+        if (this.resampler != null)
+        {
+            this.resampler.destroy();
+            this.resampler = null;
+        }
+    }
+}
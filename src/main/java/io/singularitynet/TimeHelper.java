@@ -35,6 +35,7 @@ public class TimeHelper
     public static long serverTickLength = 50;
     public static long displayGranularityMs = 0;  // How quickly we allow the Minecraft window to update.
     private static long lastUpdateTimeMs;
+    private static boolean displayDue = true;
 
     /** Provide a means to measure the frequency of an event, over a rolling window.
      */
@@ -157,13 +158,27 @@ public class TimeHelper
         return false;
     }
 
-    static public void updateDisplay()
+    /** Called once at the start of every client frame; decides whether that frame is shown in the Minecraft window.
+     * @return true if the frame should be presented.
+     */
+    static public boolean updateDisplay()
     {
         long timeNow = System.currentTimeMillis();
-        if (timeNow - lastUpdateTimeMs > displayGranularityMs)
-        {
-            // Minecraft.getMinecraft().updateDisplay();
+        displayDue = displayGranularityMs <= 0 || timeNow - lastUpdateTimeMs > displayGranularityMs;
+        if (displayDue)
             lastUpdateTimeMs = timeNow;
-        }
+        return displayDue;
+    }
+
+    /** Whether the current client frame is shown in the Minecraft window - see updateDisplay(). */
+    static public boolean isDisplayDue()
+    {
+        return displayDue || displayGranularityMs <= 0;
+    }
+
+    /** True while the window is only updated now and then, so client frames are rendered only when something wants them. */
+    static public boolean isRenderingOnDemand()
+    {
+        return displayGranularityMs > 0;
     }
 }
@@ -9,16 +9,16 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.random.Random;
 import net.minecraft.world.BlockRenderView;
 import net.minecraft.registry.Registries;
-import net.minecraft.util.Identifier;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.injection.At;
 import org.spongepowered.asm.mixin.injection.Inject;
 import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 /**
- * Captures the current block type string when rendering blocks so the
- * segmentation path can assign a stable per-type colour rather than a
- * UV-derived colour that varies across sprites.
+ * Captures the raw id of the block type being rendered so the segmentation
+ * path can assign a stable per-type colour rather than a UV-derived colour
+ * that varies across sprites. Only ints are passed, so chunk rebuilds do not
+ * allocate per block.
  */
 @Mixin(BlockRenderManager.class)
 public abstract class BlockRenderManagerMixin {
@@ -33,15 +33,12 @@ public abstract class BlockRenderManagerMixin {
                                          Random random,
                                          CallbackInfo ci) {
         try {
-            Identifier id = Registries.BLOCK.getId(state.getBlock());
-            if (id != null) {
-                TextureHelper.setCurrentBlockType(id.toString());
-                if (TextureHelper.isProducingColourMap() && TextureHelper.colourmapFrame) {
-                    TextureHelper.setDrawingBlock(true);
-                    TextureHelper.setStrictBlockDraw(true);
-                    // Set a stable per-type colour for the block being drawn
-                    TextureHelper.setPendingColourForCurrentBlock();
-                }
+            TextureHelper.setCurrentBlock(Registries.BLOCK.getRawId(state.getBlock()));
+            if (TextureHelper.isAnnotatingDraws()) {
+                TextureHelper.setDrawingBlock(true);
+                TextureHelper.setStrictBlockDraw(true);
+                // Set a stable per-type colour for the block being drawn
+                TextureHelper.setPendingColourForCurrentBlock();
             }
         } catch (Throwable ignored) {}
     }
@@ -55,7 +52,7 @@ public abstract class BlockRenderManagerMixin {
                                        boolean cull,
                                        Random random,
                                        CallbackInfo ci) {
-        if (TextureHelper.isProducingColourMap() && TextureHelper.colourmapFrame) {
+        if (TextureHelper.isAnnotatingDraws()) {
             TextureHelper.setDrawingBlock(false);
             TextureHelper.setStrictBlockDraw(false);
         }
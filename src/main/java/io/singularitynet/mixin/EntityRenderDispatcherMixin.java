@@ -16,7 +16,7 @@ public abstract class EntityRenderDispatcherMixin {
     @Inject(method = "render(Lnet/minecraft/entity/Entity;DDDFFLnet/minecraft/client/util/math/MatrixStack;Lnet/minecraft/client/render/VertexConsumerProvider;I)V",
             at = @At("HEAD"))
     private <E extends Entity> void vereya$setCurrentEntity(E entity, double x, double y, double z, float yaw, float tickDelta, MatrixStack matrices, VertexConsumerProvider vertexConsumers, int light, CallbackInfo ci) {
-        if (TextureHelper.isProducingColourMap() && TextureHelper.colourmapFrame) {
+        if (TextureHelper.isAnnotatingDraws()) {
             TextureHelper.setCurrentEntity(entity);
             // Ensure a stable per-entity colour is pending before any draw calls
             TextureHelper.setPendingColourForEntity(entity);
@@ -27,7 +27,15 @@ public abstract class EntityRenderDispatcherMixin {
     @Inject(method = "render(Lnet/minecraft/entity/Entity;DDDFFLnet/minecraft/client/util/math/MatrixStack;Lnet/minecraft/client/render/VertexConsumerProvider;I)V",
             at = @At("TAIL"))
     private <E extends Entity> void vereya$clearCurrentEntity(E entity, double x, double y, double z, float yaw, float tickDelta, MatrixStack matrices, VertexConsumerProvider vertexConsumers, int light, CallbackInfo ci) {
-        if (TextureHelper.isProducingColourMap() && TextureHelper.colourmapFrame) {
+        if (TextureHelper.isAnnotatingDraws()) {
+            if (TextureHelper.colourmapFrame && TextureHelper.isInstanceChannel()
+                    && vertexConsumers instanceof VertexConsumerProvider.Immediate) {
+                // Entities sharing a render layer are otherwise drawn together later on; draw this
+                // one's geometry now, while its instance id is current. Only in the segmentation
+                // pass - flushing during a single-pass replay would split up the RGB render's batches.
+                TextureHelper.setCurrentEntity(entity);
+                ((VertexConsumerProvider.Immediate) vertexConsumers).draw();
+            }
             TextureHelper.setCurrentEntity(null);
             TextureHelper.setStrictEntityDraw(false);
         }
@@ -28,7 +28,7 @@ public abstract class EntityRendererMixin<T extends Entity> {
                                           VertexConsumerProvider vertexConsumers,
                                           int light,
                                           CallbackInfo ci) {
-        if (TextureHelper.isProducingColourMap() && TextureHelper.colourmapFrame) {
+        if (TextureHelper.isAnnotatingDraws()) {
             TextureHelper.setCurrentEntity(entity);
             TextureHelper.setPendingColourForEntity(entity);
             TextureHelper.setStrictEntityDraw(true);
@@ -44,7 +44,7 @@ public abstract class EntityRendererMixin<T extends Entity> {
                                            VertexConsumerProvider vertexConsumers,
                                            int light,
                                            CallbackInfo ci) {
-        if (TextureHelper.isProducingColourMap() && TextureHelper.colourmapFrame) {
+        if (TextureHelper.isAnnotatingDraws()) {
             TextureHelper.setCurrentEntity(null);
             TextureHelper.setStrictEntityDraw(false);
         }
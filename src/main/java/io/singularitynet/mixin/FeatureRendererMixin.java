@@ -29,11 +29,12 @@ public abstract class FeatureRendererMixin {
                                                                          float green,
                                                                          float blue,
                                                                          CallbackInfo ci) {
-        if (!TextureHelper.isProducingColourMap() || !TextureHelper.colourmapFrame) return;
+        if (!TextureHelper.isAnnotatingDraws()) return;
         // Ensure per-entity colour is locked before feature layer draws (armor, overlays, etc.).
         TextureHelper.setPendingColourForEntity(entity);
         ShaderProgram program = RenderSystem.getShader();
-        if (program != null) {
+        // When replaying the normal render the bound program is vanilla's; the colour is applied at replay.
+        if (program != null && TextureHelper.colourmapFrame) {
             TextureHelper.applyPendingColourToProgram(program);
         }
     }
@@ -0,0 +1,22 @@
+package io.singularitynet.mixin;
+
+import io.singularitynet.utils.FixedRenderSize;
+import net.minecraft.client.render.GameRenderer;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.ModifyArg;
+
+/**
+ * The world projection takes its aspect ratio from the window; when rendering at a
+ * fixed size, use the aspect ratio of that size instead so frames aren't stretched.
+ */
+@Mixin(GameRenderer.class)
+public abstract class GameRendererAspectMixin {
+
+    @ModifyArg(method = "getBasicProjectionMatrix",
+            at = @At(value = "INVOKE", target = "Lorg/joml/Matrix4f;perspective(FFFF)Lorg/joml/Matrix4f;"),
+            index = 1)
+    private float vereya$fixedAspect(float aspect) {
+        return FixedRenderSize.isActive() ? FixedRenderSize.getAspect() : aspect;
+    }
+}
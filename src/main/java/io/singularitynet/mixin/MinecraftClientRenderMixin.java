@@ -0,0 +1,36 @@
+package io.singularitynet.mixin;
+
+import io.singularitynet.Client.VideoHook;
+import io.singularitynet.TimeHelper;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.GameRenderer;
+import net.minecraft.client.render.RenderTickCounter;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.Redirect;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * Render-on-demand for missions that prioritise offscreen rendering: the window
+ * is only shown now and then, and in between a client frame is rendered only if
+ * a video hook would capture it.
+ */
+@Mixin(MinecraftClient.class)
+public abstract class MinecraftClientRenderMixin {
+
+    @Inject(method = "render(Z)V", at = @At("HEAD"))
+    private void vereya$updateDisplay(boolean tick, CallbackInfo ci) {
+        TimeHelper.updateDisplay();
+    }
+
+    @Redirect(method = "render(Z)V",
+            at = @At(value = "INVOKE", target = "Lnet/minecraft/client/render/GameRenderer;render(Lnet/minecraft/client/render/RenderTickCounter;Z)V"))
+    private void vereya$renderOnDemand(GameRenderer gameRenderer, RenderTickCounter tickCounter, boolean tick) {
+        if (TimeHelper.isRenderingOnDemand() && !TimeHelper.isDisplayDue() && !VideoHook.isAnyCaptureDue()) {
+            VideoHook.frameSkipped();
+            return;
+        }
+        gameRenderer.render(tickCounter, tick);
+    }
+}
@@ -0,0 +1,35 @@
+package io.singularitynet.mixin;
+
+import io.singularitynet.utils.FixedRenderSize;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.gl.Framebuffer;
+import net.minecraft.client.render.GameRenderer;
+import org.spongepowered.asm.mixin.Final;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+
+/**
+ * After Minecraft sizes its main framebuffer and the game renderer's targets to
+ * the window, resizes them again to the mission's fixed render size if one is set.
+ */
+@Mixin(MinecraftClient.class)
+public abstract class MinecraftClientResolutionMixin {
+
+    @Shadow @Final private Framebuffer framebuffer;
+
+    @Shadow @Final public GameRenderer gameRenderer;
+
+    @Inject(method = "onResolutionChanged", at = @At("TAIL"))
+    private void vereya$applyFixedRenderSize(CallbackInfo ci) {
+        if (!FixedRenderSize.isActive()) {
+            return;
+        }
+        int width = FixedRenderSize.getWidth();
+        int height = FixedRenderSize.getHeight();
+        this.framebuffer.resize(width, height, MinecraftClient.IS_SYSTEM_MAC);
+        this.gameRenderer.onResized(width, height);
+    }
+}
@@ -0,0 +1,24 @@
+package io.singularitynet.mixin;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import io.singularitynet.TimeHelper;
+import org.lwjgl.glfw.GLFW;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Redirect;
+
+/**
+ * Swaps the window's buffers only on the frames TimeHelper wants shown; events
+ * are still polled on every frame.
+ */
+@Mixin(RenderSystem.class)
+public abstract class RenderSystemFlipFrameMixin {
+
+    @Redirect(method = "flipFrame(J)V",
+            at = @At(value = "INVOKE", target = "Lorg/lwjgl/glfw/GLFW;glfwSwapBuffers(J)V", remap = false))
+    private static void vereya$swapWhenDisplayDue(long window) {
+        if (TimeHelper.isDisplayDue()) {
+            GLFW.glfwSwapBuffers(window);
+        }
+    }
+}
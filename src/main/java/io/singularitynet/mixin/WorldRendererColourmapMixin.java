@@ -17,12 +17,37 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
  * world render when colour-map production is active. The second invocation of
  * {@link WorldRenderer#render} executes the normal pipeline so the on-screen
  * view remains unchanged.
+ * <p>
+ * In single-pass mode there is no second invocation: the segmentation FBO is
+ * cleared at HEAD, and every draw of the normal render is replayed into it
+ * with the annotate program as it happens (see RenderSystemDrawMixin), so
+ * culling, chunk and entity traversal are only paid once per frame.
+ * <p>
+ * With a render interval above 1 the colour map is neither rendered nor
+ * replayed on the frames in between.
  */
 @Mixin(WorldRenderer.class)
 public abstract class WorldRendererColourmapMixin {
 
     private static final ThreadLocal<Boolean> VEREYA$SEGMENTATION_RENDERING = ThreadLocal.withInitial(() -> false);
 
+    @Inject(method = "render", at = @At("HEAD"))
+    private void vereya$beginColourMapFrame(RenderTickCounter tickCounter,
+                                           boolean renderBlockOutline,
+                                           Camera camera,
+                                           GameRenderer gameRenderer,
+                                           LightmapTextureManager lightmap,
+                                           Matrix4f positionMatrix,
+                                           Matrix4f projectionMatrix,
+                                           CallbackInfo ci) {
+        if (!TextureHelper.isProducingColourMap() || VEREYA$SEGMENTATION_RENDERING.get()) {
+            return;
+        }
+        if (TextureHelper.beginSegmentationFrame() && TextureHelper.isSinglePassSegmentation()) {
+            TextureHelper.beginSegmentationReplay();
+        }
+    }
+
     @Inject(method = "render", at = @At("TAIL"))
     private void vereya$renderColourMap(RenderTickCounter tickCounter,
                                         boolean renderBlockOutline,
@@ -38,6 +63,13 @@ public abstract class WorldRendererColourmapMixin {
         if (VEREYA$SEGMENTATION_RENDERING.get()) {
             return;
         }
+        if (TextureHelper.isSinglePassSegmentation()) {
+            TextureHelper.endSegmentationReplay();
+            return;
+        }
+        if (!TextureHelper.isSegmentationDueThisFrame()) {
+            return;
+        }
 
         VEREYA$SEGMENTATION_RENDERING.set(true);
         try {
@@ -11,7 +11,9 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 /**
  * Suppresses the regular sky draw during the segmentation pass; the
- * segmentation framebuffer is pre-filled with the mission sky colour.
+ * segmentation framebuffer is pre-filled with the mission sky colour. In
+ * single-pass mode the sky is drawn as normal but not replayed into the
+ * colour map.
  */
 @Mixin(WorldRenderer.class)
 public abstract class WorldRendererSkyMixin {
@@ -26,6 +28,21 @@ public abstract class WorldRendererSkyMixin {
                                 CallbackInfo ci) {
         if (TextureHelper.isProducingColourMap() && TextureHelper.colourmapFrame) {
             ci.cancel();
+        } else if (TextureHelper.isSegmentationReplay()) {
+            TextureHelper.setSegmentationReplayPaused(true);
+        }
+    }
+
+    @Inject(method = "renderSky(Lorg/joml/Matrix4f;Lorg/joml/Matrix4f;FLnet/minecraft/client/render/Camera;ZLjava/lang/Runnable;)V", at = @At("TAIL"))
+    private void vereya$resumeReplayAfterSky(Matrix4f matrix4f,
+                                             Matrix4f projectionMatrix,
+                                             float tickDelta,
+                                             Camera camera,
+                                             boolean thickFog,
+                                             Runnable fogCallback,
+                                             CallbackInfo ci) {
+        if (TextureHelper.isSegmentationReplay()) {
+            TextureHelper.setSegmentationReplayPaused(false);
         }
     }
 }
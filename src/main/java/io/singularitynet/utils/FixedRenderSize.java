@@ -0,0 +1,58 @@
+package io.singularitynet.utils;
+
+import net.minecraft.client.MinecraftClient;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Holds the resolution the world is rendered at while a mission is sending video.
+ * <p>
+ * While active, Minecraft's main framebuffer - and the render targets the game
+ * renderer sizes from it - is kept at exactly this size whatever the window
+ * size is (see MinecraftClientResolutionMixin), and the projection uses its
+ * aspect ratio (see GameRendererAspectMixin). The window just shows the frame
+ * scaled to fit, so it can be any size, and readback sizes are known up front.
+ * There is one size for the whole mission: it is set when the mission starts and
+ * cleared when the mission running episode is cleaned up, not by the video hooks.
+ */
+public class FixedRenderSize
+{
+    private static final Logger LOGGER = LogManager.getLogger(FixedRenderSize.class);
+
+    private static int width = 0;
+    private static int height = 0;
+
+    public static boolean isActive() { return width > 0 && height > 0; }
+
+    public static int getWidth() { return width; }
+
+    public static int getHeight() { return height; }
+
+    public static float getAspect() { return (float) width / (float) height; }
+
+    /**
+     * Render at the given size from now on. Must be called on the render thread.
+     */
+    public static void set(int newWidth, int newHeight)
+    {
+        if (newWidth <= 0 || newHeight <= 0 || (newWidth == width && newHeight == height))
+            return;
+        width = newWidth;
+        height = newHeight;
+        LOGGER.info("FixedRenderSize: rendering at {}x{}", width, height);
+        MinecraftClient.getInstance().onResolutionChanged();
+    }
+
+    /**
+     * Go back to rendering at the window's size. Must be called on the render thread.
+     */
+    public static void clear()
+    {
+        if (!isActive())
+            return;
+        width = 0;
+        height = 0;
+        LOGGER.info("FixedRenderSize: rendering at window size");
+        MinecraftClient.getInstance().onResolutionChanged();
+    }
+}
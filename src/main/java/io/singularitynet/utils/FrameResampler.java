@@ -0,0 +1,187 @@
+package io.singularitynet.utils;
+
+import io.singularitynet.projectmalmo.FrameCrop;
+import io.singularitynet.projectmalmo.FrameFilter;
+import io.singularitynet.projectmalmo.FrameResize;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * Crops and scales a frame on the GPU before it is read back, so that only the
+ * frame the agent asked for crosses the bus and the socket.
+ * <p>
+ * The source framebuffer's first colour attachment is blitted into a target
+ * owned by the resampler, which is then read back in place of the source.
+ * All methods must be called on the render thread.
+ */
+public class FrameResampler
+{
+    private static final Logger LOGGER = LogManager.getLogger(FrameResampler.class);
+
+    private final FrameCrop crop;
+    private final FrameResize resize;
+    private final int filter;
+    private final int internalFormat;
+    private final int format;
+    private final int type;
+
+    private int fbo = 0;
+    private int texture = 0;
+    private int width = 0;
+    private int height = 0;
+    // Source rectangle in GL coordinates (origin bottom-left), worked out by outputWidth/outputHeight.
+    private int srcX0, srcY0, srcX1, srcY1;
+
+    /**
+     * @return a resampler for the given crop and resize, or null if neither is set.
+     * @param forceNearest true for frames whose values must not be blended, eg colour maps and depth.
+     */
+    public static FrameResampler create(FrameCrop crop, FrameResize resize, boolean forceNearest, int internalFormat, int format, int type)
+    {
+        if (crop == null && resize == null)
+            return null;
+        return new FrameResampler(crop, resize, forceNearest, internalFormat, format, type);
+    }
+
+    private FrameResampler(FrameCrop crop, FrameResize resize, boolean forceNearest, int internalFormat, int format, int type)
+    {
+        this.crop = crop;
+        this.resize = resize;
+        boolean nearest = forceNearest || resize == null || resize.getFilter() == FrameFilter.NEAREST;
+        this.filter = nearest ? GL11.GL_NEAREST : GL11.GL_LINEAR;
+        this.internalFormat = internalFormat;
+        this.format = format;
+        this.type = type;
+    }
+
+    /** Width of the frame produced from a source of the given size. */
+    public int outputWidth(int sourceWidth, int sourceHeight)
+    {
+        computeSourceRect(sourceWidth, sourceHeight);
+        return (this.resize != null) ? Math.max(1, this.resize.getWidth()) : this.srcX1 - this.srcX0;
+    }
+
+    /** Height of the frame produced from a source of the given size. */
+    public int outputHeight(int sourceWidth, int sourceHeight)
+    {
+        computeSourceRect(sourceWidth, sourceHeight);
+        return (this.resize != null) ? Math.max(1, this.resize.getHeight()) : this.srcY1 - this.srcY0;
+    }
+
+    /**
+     * Crop and scale the source framebuffer's first colour attachment.
+     * @return the framebuffer holding the result, of size outputWidth x outputHeight, to bind for reading.
+     */
+    public int resample(int sourceFbo, int sourceWidth, int sourceHeight)
+    {
+        return resample(sourceFbo, GL30.GL_COLOR_ATTACHMENT0, sourceWidth, sourceHeight);
+    }
+
+    /**
+     * Crop and scale the given colour attachment of the source framebuffer, eg GL_COLOR_ATTACHMENT1.
+     * @return the framebuffer holding the result, of size outputWidth x outputHeight, to bind for reading.
+     */
+    public int resample(int sourceFbo, int attachment, int sourceWidth, int sourceHeight)
+    {
+        int outW = outputWidth(sourceWidth, sourceHeight);
+        int outH = outputHeight(sourceWidth, sourceHeight);
+        ensureTarget(outW, outH);
+
+        int previousRead = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+        int previousDraw = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        int previousReadBuffer = GL11.glGetInteger(GL11.GL_READ_BUFFER);
+        boolean scissor = GL11.glIsEnabled(GL11.GL_SCISSOR_TEST);
+        try
+        {
+            if (scissor)
+                GL11.glDisable(GL11.GL_SCISSOR_TEST);
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, sourceFbo);
+            GL11.glReadBuffer(attachment);
+            GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.fbo);
+            GL30.glBlitFramebuffer(this.srcX0, this.srcY0, this.srcX1, this.srcY1, 0, 0, outW, outH,
+                    GL11.GL_COLOR_BUFFER_BIT, this.filter);
+        }
+        finally
+        {
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, previousRead);
+            GL11.glReadBuffer(previousReadBuffer);
+            GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, previousDraw);
+            if (scissor)
+                GL11.glEnable(GL11.GL_SCISSOR_TEST);
+        }
+        return this.fbo;
+    }
+
+    /** Release the target. Safe to call repeatedly. */
+    public void destroy()
+    {
+        if (this.fbo != 0)
+        {
+            GL30.glDeleteFramebuffers(this.fbo);
+            this.fbo = 0;
+        }
+        if (this.texture != 0)
+        {
+            GL11.glDeleteTextures(this.texture);
+            this.texture = 0;
+        }
+        this.width = 0;
+        this.height = 0;
+    }
+
+    private void computeSourceRect(int sourceWidth, int sourceHeight)
+    {
+        if (this.crop == null)
+        {
+            this.srcX0 = 0;
+            this.srcY0 = 0;
+            this.srcX1 = sourceWidth;
+            this.srcY1 = sourceHeight;
+            return;
+        }
+        // Crop is given from the top-left; GL counts rows from the bottom.
+        int x0 = clamp(this.crop.getX(), 0, sourceWidth - 1);
+        int top = clamp(this.crop.getY(), 0, sourceHeight - 1);
+        int x1 = clamp(x0 + this.crop.getWidth(), x0 + 1, sourceWidth);
+        int bottom = clamp(top + this.crop.getHeight(), top + 1, sourceHeight);
+        this.srcX0 = x0;
+        this.srcX1 = x1;
+        this.srcY0 = sourceHeight - bottom;
+        this.srcY1 = sourceHeight - top;
+    }
+
+    private static int clamp(int value, int min, int max)
+    {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private void ensureTarget(int width, int height)
+    {
+        if (this.fbo != 0 && width == this.width && height == this.height)
+            return;
+        destroy();
+        this.width = width;
+        this.height = height;
+
+        int previousTexture = GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D);
+        this.texture = GL11.glGenTextures();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.texture);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, this.internalFormat, width, height, 0, this.format, this.type, (java.nio.ByteBuffer) null);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, previousTexture);
+
+        int previousDraw = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        this.fbo = GL30.glGenFramebuffers();
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.fbo);
+        GL30.glFramebufferTexture2D(GL30.GL_DRAW_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL11.GL_TEXTURE_2D, this.texture, 0);
+        int status = GL30.glCheckFramebufferStatus(GL30.GL_DRAW_FRAMEBUFFER);
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, previousDraw);
+        if (status != GL30.GL_FRAMEBUFFER_COMPLETE)
+            LOGGER.warn("FrameResampler: target framebuffer incomplete (0x{})", Integer.toHexString(status));
+        else
+            LOGGER.info("FrameResampler: created {}x{} target", width, height);
+    }
+}
@@ -0,0 +1,293 @@
+package io.singularitynet.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Draws one full-screen triangle with a fragment shader, sampling a source
+ * texture and writing into a single-attachment framebuffer owned by the pass.
+ * <p>
+ * Video producers use this to transform a frame on the GPU - linearising
+ * depth, converting to luminance, resampling - so that what is read back is
+ * already in the format the agent wants. Usage is:
+ * <pre>
+ *     if (pass.begin(sourceTexture, width, height)) {
+ *         GL20.glUniform1f(pass.getUniform("someUniform"), value);
+ *         pass.finish();
+ *     }
+ * </pre>
+ * after which {@link #getFramebuffer()} can be bound as the read framebuffer.
+ * All GL state touched by the pass is restored by {@link #finish()}, so
+ * GlStateManager's cached state stays valid. All methods must be called on the
+ * render thread.
+ */
+public class FullscreenPass
+{
+    private static final Logger LOGGER = LogManager.getLogger(FullscreenPass.class);
+    private static final String SHADER_ROOT = "assets/vereya/shaders/pass/";
+
+    private final String fragmentName;
+    private final int internalFormat;
+    private final int format;
+    private final int type;
+    private int filter = GL11.GL_NEAREST;
+
+    private int program = 0;
+    private boolean failed = false;
+    private int vao = 0;
+    private int fbo = 0;
+    private int texture = 0;
+    private int width = 0;
+    private int height = 0;
+    private final Map<String, Integer> uniforms = new HashMap<>();
+
+    // GL state saved by begin() and restored by finish().
+    private int prevDrawFb, prevReadFb, prevProgram, prevVao, prevActiveTexture, prevTexture;
+    private int prevMinFilter, prevMagFilter;
+    private boolean prevDepthTest, prevBlend, prevCull, prevScissor;
+    private final int[] prevViewport = new int[4];
+
+    /**
+     * @param fragmentName name of the fragment shader in assets/vereya/shaders/pass, without the .fsh extension.
+     * @param internalFormat internal format of the target texture, eg GL_R32F.
+     * @param format pixel format used to allocate the target texture, eg GL_RED.
+     * @param type pixel type used to allocate the target texture, eg GL_FLOAT.
+     */
+    public FullscreenPass(String fragmentName, int internalFormat, int format, int type)
+    {
+        this.fragmentName = fragmentName;
+        this.internalFormat = internalFormat;
+        this.format = format;
+        this.type = type;
+    }
+
+    /** Set the filter used when the source texture is sampled at a different size to the target. */
+    public void setFilter(int filter) { this.filter = filter; }
+
+    public int getFramebuffer() { return this.fbo; }
+
+    public int getWidth() { return this.width; }
+
+    public int getHeight() { return this.height; }
+
+    /** Location of a uniform in the pass's program, or -1 if it doesn't exist. */
+    public int getUniform(String name)
+    {
+        Integer location = this.uniforms.get(name);
+        if (location == null)
+        {
+            location = GL20.glGetUniformLocation(this.program, name);
+            this.uniforms.put(name, location);
+        }
+        return location;
+    }
+
+    /**
+     * Bind the target framebuffer (creating or resizing it as needed), the program, and the source texture on unit 0.
+     * @return false if the shader could not be built; nothing has been changed and finish() must not be called.
+     */
+    public boolean begin(int sourceTexture, int width, int height)
+    {
+        if (!ensureProgram())
+            return false;
+        ensureTarget(width, height);
+
+        this.prevDrawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        this.prevReadFb = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+        this.prevProgram = GL11.glGetInteger(GL20.GL_CURRENT_PROGRAM);
+        this.prevVao = GL11.glGetInteger(GL30.GL_VERTEX_ARRAY_BINDING);
+        this.prevActiveTexture = GL11.glGetInteger(GL13.GL_ACTIVE_TEXTURE);
+        GL13.glActiveTexture(GL13.GL_TEXTURE0);
+        this.prevTexture = GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D);
+        GL11.glGetIntegerv(GL11.GL_VIEWPORT, this.prevViewport);
+        this.prevDepthTest = GL11.glIsEnabled(GL11.GL_DEPTH_TEST);
+        this.prevBlend = GL11.glIsEnabled(GL11.GL_BLEND);
+        this.prevCull = GL11.glIsEnabled(GL11.GL_CULL_FACE);
+        this.prevScissor = GL11.glIsEnabled(GL11.GL_SCISSOR_TEST);
+
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.fbo);
+        GL11.glViewport(0, 0, width, height);
+        GL11.glDisable(GL11.GL_DEPTH_TEST);
+        GL11.glDisable(GL11.GL_BLEND);
+        GL11.glDisable(GL11.GL_CULL_FACE);
+        GL11.glDisable(GL11.GL_SCISSOR_TEST);
+        GL20.glUseProgram(this.program);
+        GL30.glBindVertexArray(this.vao);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, sourceTexture);
+        // The source usually belongs to someone else (eg the main framebuffer), so its filter is put back in finish().
+        this.prevMinFilter = GL11.glGetTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER);
+        this.prevMagFilter = GL11.glGetTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, this.filter);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, this.filter);
+        GL20.glUniform1i(getUniform("Sampler0"), 0);
+        return true;
+    }
+
+    /** Draw the pass and restore the GL state saved by begin(). */
+    public void finish()
+    {
+        try
+        {
+            GL11.glDrawArrays(GL11.GL_TRIANGLES, 0, 3);
+        }
+        finally
+        {
+            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, this.prevMinFilter);
+            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, this.prevMagFilter);
+            GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.prevTexture);
+            GL13.glActiveTexture(this.prevActiveTexture);
+            GL30.glBindVertexArray(this.prevVao);
+            GL20.glUseProgram(this.prevProgram);
+            setEnabled(GL11.GL_DEPTH_TEST, this.prevDepthTest);
+            setEnabled(GL11.GL_BLEND, this.prevBlend);
+            setEnabled(GL11.GL_CULL_FACE, this.prevCull);
+            setEnabled(GL11.GL_SCISSOR_TEST, this.prevScissor);
+            GL11.glViewport(this.prevViewport[0], this.prevViewport[1], this.prevViewport[2], this.prevViewport[3]);
+            GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.prevDrawFb);
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, this.prevReadFb);
+        }
+    }
+
+    /** Release the program, target and vertex array. Safe to call repeatedly. */
+    public void destroy()
+    {
+        destroyTarget();
+        if (this.vao != 0)
+        {
+            GL30.glDeleteVertexArrays(this.vao);
+            this.vao = 0;
+        }
+        if (this.program > 0)
+        {
+            GL20.glDeleteProgram(this.program);
+            this.program = 0;
+        }
+        this.uniforms.clear();
+        this.failed = false;
+    }
+
+    private static void setEnabled(int cap, boolean enabled)
+    {
+        if (enabled)
+            GL11.glEnable(cap);
+        else
+            GL11.glDisable(cap);
+    }
+
+    private boolean ensureProgram()
+    {
+        if (this.program > 0)
+            return true;
+        if (this.failed)
+            return false;
+        int v = loadShader("fullscreen.vsh", GL20.GL_VERTEX_SHADER);
+        int f = loadShader(this.fragmentName + ".fsh", GL20.GL_FRAGMENT_SHADER);
+        if (v <= 0 || f <= 0)
+        {
+            if (v > 0) GL20.glDeleteShader(v);
+            if (f > 0) GL20.glDeleteShader(f);
+            this.failed = true;
+            return false;
+        }
+        int prog = GL20.glCreateProgram();
+        GL20.glAttachShader(prog, v);
+        GL20.glAttachShader(prog, f);
+        GL20.glLinkProgram(prog);
+        GL20.glDetachShader(prog, v);
+        GL20.glDetachShader(prog, f);
+        GL20.glDeleteShader(v);
+        GL20.glDeleteShader(f);
+        if (GL20.glGetProgrami(prog, GL20.GL_LINK_STATUS) == GL11.GL_FALSE)
+        {
+            LOGGER.error("FullscreenPass: link error for {}: {}", this.fragmentName, GL20.glGetProgramInfoLog(prog));
+            GL20.glDeleteProgram(prog);
+            this.failed = true;
+            return false;
+        }
+        this.program = prog;
+        this.uniforms.clear();
+        this.vao = GL30.glGenVertexArrays();
+        return true;
+    }
+
+    private static int loadShader(String filename, int shaderType)
+    {
+        try (InputStream stream = FullscreenPass.class.getClassLoader().getResourceAsStream(SHADER_ROOT + filename))
+        {
+            if (stream == null)
+            {
+                LOGGER.error("FullscreenPass: shader {} not found", filename);
+                return -1;
+            }
+            String src = new String(stream.readAllBytes(), StandardCharsets.UTF_8);
+            int shader = GL20.glCreateShader(shaderType);
+            GL20.glShaderSource(shader, src);
+            GL20.glCompileShader(shader);
+            if (GL20.glGetShaderi(shader, GL20.GL_COMPILE_STATUS) == GL11.GL_FALSE)
+            {
+                LOGGER.error("FullscreenPass: compile error ({}): {}", filename, GL20.glGetShaderInfoLog(shader));
+                GL20.glDeleteShader(shader);
+                return -1;
+            }
+            return shader;
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("FullscreenPass: failed to load shader {}: {}", filename, e.getMessage());
+            return -1;
+        }
+    }
+
+    private void ensureTarget(int width, int height)
+    {
+        if (this.fbo != 0 && width == this.width && height == this.height)
+            return;
+        destroyTarget();
+        this.width = width;
+        this.height = height;
+
+        int prevTexture = GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D);
+        this.texture = GL11.glGenTextures();
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, this.texture);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, this.internalFormat, width, height, 0, this.format, this.type, (java.nio.ByteBuffer) null);
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, prevTexture);
+
+        int prevDrawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        this.fbo = GL30.glGenFramebuffers();
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, this.fbo);
+        GL30.glFramebufferTexture2D(GL30.GL_DRAW_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0, GL11.GL_TEXTURE_2D, this.texture, 0);
+        int status = GL30.glCheckFramebufferStatus(GL30.GL_DRAW_FRAMEBUFFER);
+        GL30.glBindFramebuffer(GL30.GL_DRAW_FRAMEBUFFER, prevDrawFb);
+        if (status != GL30.GL_FRAMEBUFFER_COMPLETE)
+            LOGGER.warn("FullscreenPass: framebuffer for {} incomplete (0x{})", this.fragmentName, Integer.toHexString(status));
+        else
+            LOGGER.info("FullscreenPass: created {}x{} target for {}", width, height, this.fragmentName);
+    }
+
+    private void destroyTarget()
+    {
+        if (this.fbo != 0)
+        {
+            GL30.glDeleteFramebuffers(this.fbo);
+            this.fbo = 0;
+        }
+        if (this.texture != 0)
+        {
+            GL11.glDeleteTextures(this.texture);
+            this.texture = 0;
+        }
+        this.width = 0;
+        this.height = 0;
+    }
+}
@@ -25,6 +25,7 @@ import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
 import io.singularitynet.Client.VereyaModClient;
 import net.minecraft.block.BlockState;
 import net.minecraft.entity.InventoryOwner;
@@ -39,6 +40,7 @@ import net.minecraft.registry.Registries;
 import net.minecraft.util.Identifier;
 import net.minecraft.util.math.BlockPos;
 
+import java.io.IOException;
 import java.util.Map;
 
 
@@ -178,6 +180,39 @@ public class JSONWorldDataHelper {
         json.add(jsonName, arr);
     }
 
+    /**
+     * Streaming version of buildGridData: writes the same array, as a member of the object the writer is in,
+     * without building a tree for it. Worth having for large grids, which are most of an observation.
+     * @param writer the writer, positioned inside an object.
+     * @param environmentDimensions object which specifies the required dimensions of the grid to be returned.
+     * @param player the entity the grid is centred on, unless its coordinates are absolute.
+     * @param jsonName name to use for identifying the returned JSON array.
+     */
+    public static void writeGridData(JsonWriter writer, GridDimensions environmentDimensions, LivingEntity player, String jsonName) throws IOException
+    {
+        if (player == null)
+            return;
+
+        writer.name(jsonName).beginArray();
+        BlockPos.Mutable p = new BlockPos.Mutable();
+        int originX = environmentDimensions.absoluteCoords ? 0 : player.getBlockX();
+        int originY = environmentDimensions.absoluteCoords ? 0 : player.getBlockY();
+        int originZ = environmentDimensions.absoluteCoords ? 0 : player.getBlockZ();
+        for (int y = environmentDimensions.yMin; y <= environmentDimensions.yMax; y++)
+        {
+            for (int z = environmentDimensions.zMin; z <= environmentDimensions.zMax; z++)
+            {
+                for (int x = environmentDimensions.xMin; x <= environmentDimensions.xMax; x++)
+                {
+                    p.set(originX + x, originY + y, originZ + z);
+                    BlockState state = player.getWorld().getBlockState(p);
+                    writer.value(Registries.BLOCK.getId(state.getBlock()).getPath());
+                }
+            }
+        }
+        writer.endArray();
+    }
+
     public static void buildControllableMobsData(JsonObject json, Map<String, MobEntity> entities){
         JsonObject controllableEntities = null;
         if(!json.has(VereyaModClient.CONTROLLABLE)){
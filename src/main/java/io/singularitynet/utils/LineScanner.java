@@ -0,0 +1,94 @@
+package io.singularitynet.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/** Splits a stream into newline-terminated UTF-8 lines.<br>
+ * The stream is read in blocks and each block is scanned for line ends, so a line is decoded straight from the
+ * block it arrived in, and only copied if it spans more than one read. Lines are decoded whole, so a multi-byte
+ * character split across two blocks comes out intact. Anything after the last newline when the stream ends is
+ * not a complete line, and is dropped. Not thread-safe - use one per stream.
+ */
+public class LineScanner
+{
+    /** Receives each line, without its newline. */
+    public interface LineHandler
+    {
+        /** @return true to carry on reading; false to stop. */
+        boolean onLine(String line) throws IOException;
+    }
+
+    private final int blockBytes;
+    private final int maxLineBytes;
+    private final ByteArrayOutputStream partial = new ByteArrayOutputStream();
+    private boolean overlong = false;
+
+    /**
+     * @param blockBytes size of each read from the stream.
+     * @param maxLineBytes longest line accepted; reading stops once a line reaches this length without ending.
+     */
+    public LineScanner(int blockBytes, int maxLineBytes)
+    {
+        this.blockBytes = blockBytes;
+        this.maxLineBytes = maxLineBytes;
+    }
+
+    /**
+     * Read lines until the stream ends, the handler asks to stop, or a line is too long.
+     * @return true if the stream ended; false if reading stopped early - see isOverlong() for why.
+     */
+    public boolean read(InputStream in, LineHandler handler) throws IOException
+    {
+        byte[] buffer = new byte[this.blockBytes];
+        int count;
+        while ((count = in.read(buffer)) != -1)
+        {
+            if (!scan(buffer, count, handler))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Pass every line ended in this block to the handler, and keep any unfinished line for the next block.
+     * @return false if the handler asked to stop, or the unfinished line is too long.
+     */
+    public boolean scan(byte[] block, int count, LineHandler handler) throws IOException
+    {
+        int start = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (block[i] != '\n')
+                continue;
+            String line;
+            if (this.partial.size() == 0)
+            {
+                line = new String(block, start, i - start, StandardCharsets.UTF_8);
+            }
+            else
+            {
+                this.partial.write(block, start, i - start);
+                line = this.partial.toString(StandardCharsets.UTF_8);
+                this.partial.reset();
+            }
+            start = i + 1;
+            if (!handler.onLine(line))
+                return false;
+        }
+        this.partial.write(block, start, count - start);
+        if (this.partial.size() >= this.maxLineBytes)
+        {
+            this.overlong = true;
+            return false;
+        }
+        return true;
+    }
+
+    /** @return true if reading stopped because a line reached the maximum length. */
+    public boolean isOverlong()
+    {
+        return this.overlong;
+    }
+}
@@ -0,0 +1,149 @@
+package io.singularitynet.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ring of pixel-pack buffer objects (PBOs) used to read a framebuffer back
+ * without stalling the render thread.
+ * <p>
+ * Each call to {@link #readPixels} queues a glReadPixels into the next PBO in
+ * the ring - which returns as soon as the transfer has been scheduled - and
+ * then maps the oldest queued PBO, whose transfer was started depth-1 frames
+ * earlier and has normally completed by now. The price of not waiting for the
+ * GPU is depth-1 frames of latency. While the ring is still filling (the first
+ * depth-1 calls, and again after a size change) no frame is delivered.
+ * <p>
+ * A depth of 1 still goes through a PBO but maps it straight away, which is
+ * equivalent to a synchronous read. All methods must be called on the render
+ * thread.
+ */
+public class PixelPackRing
+{
+    private static final Logger LOGGER = LogManager.getLogger(PixelPackRing.class);
+
+    private final int depth;
+    private int[] pbos = null;
+    private int head = 0;       // Slot the next glReadPixels will write to.
+    private int pending = 0;    // Number of slots holding a queued, undelivered frame.
+    private int width = 0;
+    private int height = 0;
+    private int format = 0;
+    private int type = 0;
+    private int frameBytes = 0;
+    private ByteBuffer mappedView = null;
+
+    /**
+     * @param depth number of PBOs in the ring; values below 1 are treated as 1.
+     */
+    public PixelPackRing(int depth)
+    {
+        this.depth = Math.max(1, depth);
+    }
+
+    public int getDepth() { return this.depth; }
+
+    /** Number of frames between a frame being queued and it being delivered once the ring is full. */
+    public int getLatency() { return this.depth - 1; }
+
+    /**
+     * Queue a read of the currently bound read framebuffer, and copy the oldest
+     * completed frame into dest.
+     *
+     * @param width width of the region to read, starting at the origin.
+     * @param height height of the region to read.
+     * @param format GL pixel format, eg GL_BGRA.
+     * @param type GL pixel type, eg GL_UNSIGNED_BYTE.
+     * @param bytesPerPixel size of one packed pixel for this format/type, at the current GL_PACK_ALIGNMENT.
+     * @param dest destination buffer; written from index 0, position and limit are left untouched.
+     * @return true if a frame was copied into dest, false if the ring is still filling.
+     */
+    public boolean readPixels(int width, int height, int format, int type, int bytesPerPixel, ByteBuffer dest)
+    {
+        int bytes = width * height * bytesPerPixel;
+        if (this.pbos == null || width != this.width || height != this.height
+                || format != this.format || type != this.type || bytes != this.frameBytes)
+        {
+            allocate(width, height, format, type, bytes);
+        }
+
+        int previousPack = GL11.glGetInteger(GL21.GL_PIXEL_PACK_BUFFER_BINDING);
+        try
+        {
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.pbos[this.head]);
+            GL11.glReadPixels(0, 0, width, height, format, type, 0L);
+            this.head = (this.head + 1) % this.depth;
+            this.pending++;
+
+            if (this.pending < this.depth)
+                return false;
+
+            // The ring is full, so head now points at the oldest queued frame.
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, this.pbos[this.head]);
+            this.pending--;
+            this.mappedView = GL15.glMapBuffer(GL21.GL_PIXEL_PACK_BUFFER, GL15.GL_READ_ONLY, this.frameBytes, this.mappedView);
+            if (this.mappedView == null)
+            {
+                LOGGER.warn("PixelPackRing: failed to map PBO {}", this.pbos[this.head]);
+                return false;
+            }
+            try
+            {
+                dest.put(0, this.mappedView, 0, Math.min(this.frameBytes, dest.capacity()));
+            }
+            finally
+            {
+                GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+            }
+            return true;
+        }
+        finally
+        {
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, previousPack);
+        }
+    }
+
+    /** Drop any queued frames; the ring will refill before delivering again. */
+    public void reset()
+    {
+        this.head = 0;
+        this.pending = 0;
+    }
+
+    /** Release the GL buffers. Safe to call repeatedly. */
+    public void destroy()
+    {
+        if (this.pbos != null)
+        {
+            GL15.glDeleteBuffers(this.pbos);
+            this.pbos = null;
+        }
+        this.mappedView = null;
+        reset();
+    }
+
+    private void allocate(int width, int height, int format, int type, int bytes)
+    {
+        destroy();
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.type = type;
+        this.frameBytes = bytes;
+        this.pbos = new int[this.depth];
+        GL15.glGenBuffers(this.pbos);
+        int previousPack = GL11.glGetInteger(GL21.GL_PIXEL_PACK_BUFFER_BINDING);
+        for (int pbo : this.pbos)
+        {
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbo);
+            GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, (long) bytes, GL15.GL_STREAM_READ);
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, previousPack);
+        LOGGER.info("PixelPackRing: allocated {} PBOs of {} bytes for {}x{}", this.depth, bytes, width, height);
+    }
+}
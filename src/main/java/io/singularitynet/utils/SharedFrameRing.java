@@ -0,0 +1,183 @@
+package io.singularitynet.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Ring of frame slots in a memory-mapped file, for agents running on the same
+ * host as the client - eg in /dev/shm. A frame is copied once, from the
+ * readback buffer into the mapping, and the agent reads it straight out of
+ * its own mapping of the file; no socket is involved.
+ * <p>
+ * Layout, all little-endian:
+ * <pre>
+ * file header (64 bytes)
+ *   0  int   magic "VRFR" (0x52465256)
+ *   4  short version (1)
+ *   6  short file header bytes (64)
+ *   8  int   slot count
+ *   12 int   slot capacity - bytes of frame header plus pixels a slot can hold
+ *   16 long  sequence number of the last published frame; -1 before the first
+ *   24 int   generation - bumped whenever the file is resized, so a reader knows to remap it
+ * slot i, at 64 + i * (32 + capacity)
+ *   0  long  seqlock - odd while the slot is being written
+ *   8  long  sequence number of the frame in the slot
+ *   16 int   frame header bytes
+ *   20 int   pixel bytes
+ *   32       frame header, then pixels
+ * </pre>
+ * Frame n goes into slot n % slot count. A reader:
+ * <ol>
+ * <li>reads the generation and the last published sequence number n, and gives up if n is -1;</li>
+ * <li>reads the seqlock of slot n % slot count, retrying later if it is odd;</li>
+ * <li>checks the sequence number stored in the slot is n - after a resize a slot can hold anything else;</li>
+ * <li>copies the frame out;</li>
+ * <li>re-reads the seqlock and the generation, and keeps the copy only if both are unchanged.</li>
+ * </ol>
+ * The loads in steps 1, 2 and 5 must be acquire loads (eg VarHandle getAcquire), and there must be a load-load
+ * fence (VarHandle.loadLoadFence, or the equivalent in the reader's language) between the copy and the re-check,
+ * so the copy can't be satisfied from after the re-check. After a resize the last published sequence number
+ * reads -1 until the next frame is published. All writes must come from one thread at a time.
+ */
+public class SharedFrameRing
+{
+    private static final Logger LOGGER = LogManager.getLogger(SharedFrameRing.class);
+
+    private static final int MAGIC = 0x52465256;
+    private static final short VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 64;
+    private static final int SLOT_HEADER_BYTES = 32;
+    private static final int SEQUENCE_OFFSET = 16;
+    private static final int GENERATION_OFFSET = 24;
+    // Room for the frame header on top of the pixels, so a json header rarely forces a resize.
+    public static final int HEADER_ALLOWANCE = 16 * 1024;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path path;
+    private final int slots;
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int capacity;
+    private int generation = 0;
+    private long nextSequence = 0;
+
+    /**
+     * Create (or replace) the ring file.
+     * @param path file to map, eg /dev/shm/vereya-frames-10000.
+     * @param slots number of frames the ring holds; a reader has slots - 1 frames' time to copy one out.
+     * @param capacity bytes of frame header plus pixels each slot is first sized for; grown as needed.
+     */
+    public SharedFrameRing(Path path, int slots, int capacity) throws IOException
+    {
+        this.path = path;
+        this.slots = Math.max(2, slots);
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        allocate(Math.max(1, capacity));
+    }
+
+    public Path getPath() { return this.path; }
+
+    /**
+     * Copy a frame into the next slot and publish it.
+     * @param header frame header, from its position to its limit; the position is left untouched.
+     * @param pixels frame pixels, from its position to its limit; the position is left untouched.
+     * @return the frame's sequence number.
+     */
+    public long publish(ByteBuffer header, ByteBuffer pixels) throws IOException
+    {
+        int headerBytes = header.remaining();
+        int pixelBytes = pixels.remaining();
+        if (headerBytes + pixelBytes > this.capacity)
+            allocate(headerBytes + pixelBytes + HEADER_ALLOWANCE);
+
+        long sequence = this.nextSequence++;
+        int base = FILE_HEADER_BYTES + (int) (sequence % this.slots) * (SLOT_HEADER_BYTES + this.capacity);
+        long lock = (long) LONGS.getVolatile(this.map, base);
+        if ((lock & 1) != 0)
+            lock++;     // Left odd by a write that failed part way; the slot is being rewritten anyway.
+        LONGS.setVolatile(this.map, base, lock + 1);
+        // The volatile store above only orders the stores before it; without this fence the plain writes below
+        // could become visible before the lock goes odd, and a reader would accept a torn frame.
+        VarHandle.storeStoreFence();
+        this.map.putLong(base + 8, sequence);
+        this.map.putInt(base + 16, headerBytes);
+        this.map.putInt(base + 20, pixelBytes);
+        this.map.put(base + SLOT_HEADER_BYTES, header, header.position(), headerBytes);
+        this.map.put(base + SLOT_HEADER_BYTES + headerBytes, pixels, pixels.position(), pixelBytes);
+        LONGS.setVolatile(this.map, base, lock + 2);
+        LONGS.setVolatile(this.map, SEQUENCE_OFFSET, sequence);
+        return sequence;
+    }
+
+    /** Unmap and delete the file; readers that still have it mapped keep their mapping. Safe to call repeatedly. */
+    public void close()
+    {
+        this.map = null;
+        if (this.channel != null)
+        {
+            try
+            {
+                this.channel.close();
+                Files.deleteIfExists(this.path);
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("SharedFrameRing: failed to remove {}: {}", this.path, e.toString());
+            }
+            this.channel = null;
+        }
+    }
+
+    private void allocate(int capacity) throws IOException
+    {
+        // Keep every slot 8-byte aligned: the seqlocks are accessed through a VarHandle, which rejects misaligned longs.
+        capacity = (capacity + 7) & ~7;
+        long bytes = FILE_HEADER_BYTES + (long) this.slots * (SLOT_HEADER_BYTES + (long) capacity);
+        if (bytes > Integer.MAX_VALUE)
+            throw new IOException("Frame ring of " + this.slots + " slots of " + capacity + " bytes is too large to map");
+        // Readers check the generation, so bump it before the layout changes under them, and stop pointing them at a
+        // frame: under the new layout the last sequence's slot holds old pixel bytes, not a frame.
+        this.generation++;
+        if (this.map != null)
+        {
+            LONGS.setVolatile(this.map, SEQUENCE_OFFSET, -1L);
+            INTS.setVolatile(this.map, GENERATION_OFFSET, this.generation);
+        }
+        this.capacity = capacity;
+        // Only ever grown: shrinking the file would fault a reader still using its old mapping.
+        this.map = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        this.map.order(ByteOrder.LITTLE_ENDIAN);
+        this.map.putInt(0, MAGIC);
+        this.map.putShort(4, VERSION);
+        this.map.putShort(6, (short) FILE_HEADER_BYTES);
+        this.map.putInt(8, this.slots);
+        this.map.putInt(12, this.capacity);
+        // Clear every slot header, so no slot matches a sequence number until it is written. The stored sequence is
+        // -1 rather than 0, which would match a reader still asking for frame 0.
+        for (int i = 0; i < this.slots; i++)
+        {
+            int base = FILE_HEADER_BYTES + i * (SLOT_HEADER_BYTES + this.capacity);
+            for (int offset = 0; offset < SLOT_HEADER_BYTES; offset += 8)
+                this.map.putLong(base + offset, 0L);
+            this.map.putLong(base + 8, -1L);
+        }
+        // No frame until the next publish.
+        LONGS.setVolatile(this.map, SEQUENCE_OFFSET, -1L);
+        INTS.setVolatile(this.map, GENERATION_OFFSET, this.generation);
+        LOGGER.info("SharedFrameRing: mapped {} slots of {} bytes at {}", this.slots, this.capacity, this.path);
+    }
+}
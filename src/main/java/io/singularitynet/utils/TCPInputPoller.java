@@ -19,21 +19,26 @@
 
 package io.singularitynet.utils;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 
 /** Class which polls for TCP commands in the background, and makes them available via a thread-safe queue.<br>
  * Used for receiving control commands from the Malmo code. By default a client connection is used to service
  * multiple request / reply interaction which can lead to connections remaining open. Use constructor with
- * singleRequestReply set to false if only one interaction is to be served.
+ * singleRequestReply set to false if only one interaction is to be served.<br>
+ * Each accepted connection is read on its own virtual thread, so reconnecting agents don't cost a platform thread each.
+ * The queue is lock-free for the consumer: connections append to it, and the tick thread pops or drains it without
+ * taking any lock.
  */
 public class TCPInputPoller extends Thread
 {
@@ -49,7 +54,10 @@ public class TCPInputPoller extends Thread
     }
 
     private boolean keepRunning = true;
-    private ArrayList<CommandAndIPAddress> commandQueue;
+    private final ConcurrentLinkedQueue<CommandAndIPAddress> commandQueue = new ConcurrentLinkedQueue<CommandAndIPAddress>();
+    // Serialises onCommand across connections. A ReentrantLock rather than a monitor, so a virtual thread
+    // waiting for it (or blocked in onCommand's reply) doesn't pin its carrier thread.
+    private final ReentrantLock commandLock = new ReentrantLock();
     private int requestedPortNumber;	// Can be 0, meaning allocate one dynamically.
     private int portRangeMin = -1;
     private int portRangeMax = -1;
@@ -68,10 +76,7 @@ public class TCPInputPoller extends Thread
      */
     public void addCommand(String s)
     {
-        synchronized(this)
-        {
-            this.commandQueue.add(new CommandAndIPAddress(s, ""));
-        }
+        this.commandQueue.add(new CommandAndIPAddress(s, ""));
     }
 
     private void Log(Level level, String message)
@@ -91,7 +96,6 @@ public class TCPInputPoller extends Thread
     public TCPInputPoller(int port, String logname)
     {
         this.requestedPortNumber = port;
-        this.commandQueue = new ArrayList<CommandAndIPAddress>();
         this.logname = logname;
     }
 
@@ -107,7 +111,6 @@ public class TCPInputPoller extends Thread
         this.portRangeMax = portmax;
         this.portRangeMin = portmin;
         this.choosePortRandomly = choosePortRandomly;
-        this.commandQueue = new ArrayList<CommandAndIPAddress>();
         this.logname = logname;
     }
 
@@ -122,7 +125,6 @@ public class TCPInputPoller extends Thread
         this.requestedPortNumber = requestedPort;
         this.portRangeMax = Math.max(portmin,  portmax);
         this.portRangeMin = Math.min(portmin,  portmax);
-        this.commandQueue = new ArrayList<CommandAndIPAddress>();
         this.logname = logname;
     }
 
@@ -143,26 +145,35 @@ public class TCPInputPoller extends Thread
      */
     public String getCommand()
     {
-        String command = "";
-        synchronized(this)
+        CommandAndIPAddress command = commandQueue.poll();
+        return command != null ? command.command : "";
+    }
+
+    /** Move every queued command, oldest first, onto the end of a list.<br>
+     * Lets the tick thread take a whole burst in one call, rather than popping commands one at a time.
+     * @param into list to append the commands to - typically reused from tick to tick.
+     * @return the number of commands drained.
+     */
+    public int drainCommands(List<CommandAndIPAddress> into)
+    {
+        int count = 0;
+        CommandAndIPAddress command;
+        while ((command = commandQueue.poll()) != null)
         {
-            if (commandQueue.size() > 0)
-            {
-                command = commandQueue.remove(0).command;
-            }
+            into.add(command);
+            count++;
         }
-        return command;
+        return count;
     }
 
     /** Remove all commands from the queue.
      */
     public void clearCommands()
     {
-        synchronized(this)
-        {
-            System.out.println("JETTISONING " + commandQueue.size() + " COMMANDS");
-            commandQueue.clear();
-        }
+        int count = 0;
+        while (commandQueue.poll() != null)
+            count++;
+        System.out.println("JETTISONING " + count + " COMMANDS");
     }
 
     /** Pop the oldest command from our list and return it.
@@ -170,15 +181,7 @@ public class TCPInputPoller extends Thread
      */
     public CommandAndIPAddress getCommandAndIPAddress()
     {
-        CommandAndIPAddress command = null;
-        synchronized(this)
-        {
-            if (commandQueue.size() > 0)
-            {
-                command = commandQueue.remove(0);
-            }
-        }
-        return command;
+        return commandQueue.poll();
     }
 
     /** Immediately stop waiting for messages, and close the SocketServer.
@@ -253,8 +256,8 @@ public class TCPInputPoller extends Thread
             if (socket != null)
             {
                 this.connection_count++;
-                Runnable connectionHandler = new TCPConnectionHandler(socket, this, this.logname + ":S#" + this.connection_count);
-                new Thread(connectionHandler).start();
+                String handlerName = this.logname + ":S#" + this.connection_count;
+                Thread.ofVirtual().name(handlerName).start(new TCPConnectionHandler(socket, this, handlerName));
             }
         }
 
@@ -275,15 +278,22 @@ public class TCPInputPoller extends Thread
 
     public void commandReceived(String command, String ipOriginator, DataOutputStream dos)
     {
-        synchronized(this)
+        // Connections are handled concurrently; the lock keeps onCommand calls serialised, and the queue
+        // in the order they were made. Consumers of the queue don't take it.
+        this.commandLock.lock();
+        try
         {
             if (onCommand(command, ipOriginator, dos))
             {
                 // Add this command to our list - the calling thread will
-                // retrieve it via getCommand().
+                // retrieve it via getCommand() or drainCommands().
                 commandQueue.add(new CommandAndIPAddress(command, ipOriginator));
             }
         }
+        finally
+        {
+            this.commandLock.unlock();
+        }
     }
 
     /** Override this if you want instant notification of each command as it comes in.
@@ -342,13 +352,18 @@ public class TCPInputPoller extends Thread
         return getPort();
     }
 
-    /** Class which handles the socket connection, getting messages from it and forwarding them on to the TCPInputPoller.
+    /** Class which handles the socket connection, getting messages from it and forwarding them on to the TCPInputPoller.<br>
+     * Commands are newline-terminated, and split out of the stream by a LineScanner.
      */
-    public class TCPConnectionHandler extends Thread
+    public class TCPConnectionHandler implements Runnable
     {
+        private static final int MAX_STR_LEN = 10000000;
+        private static final int READ_BUFFER_BYTES = 64 * 1024;
+
         private Socket socket;
         private TCPInputPoller poller;
         private String logname;
+        private DataOutputStream dos;
 
         public TCPConnectionHandler(Socket socket, TCPInputPoller poller, String logname)
         {
@@ -364,42 +379,28 @@ public class TCPInputPoller extends Thread
 
         public void run()
         {
-            final int MAX_STR_LEN = 10000000;
-            try
+            try (Socket socket = this.socket)
             {
                 Log(Level.INFO, "About to try reading inputstream...");
-                BufferedReader br = new BufferedReader(new InputStreamReader(this.socket.getInputStream()));
-                StringBuffer sb = new StringBuffer();
-                int intC;
-                while ((intC = br.read()) != -1)
+                InputStream in = socket.getInputStream();
+                // Replies are buffered, and flushed once the poller has handled each command.
+                this.dos = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                InetAddress address = socket.getInetAddress();
+                String originator = address.getHostName();
+                Log(Level.INFO, "Reading lines from " + socket.getRemoteSocketAddress() + "(remote), " + originator + "(hostname) " + address.getHostAddress() + "(hostaddress)");
+
+                LineScanner scanner = new LineScanner(READ_BUFFER_BYTES, MAX_STR_LEN);
+                scanner.read(in, command -> {
+                    Log(Level.FINE, "Received this: " + command);
+                    poller.commandReceived(command, originator, this.dos);
+                    this.dos.flush();
+                    return !singleRequestReply;  // Stop handling the connection after one interaction.
+                });
+                if (scanner.isOverlong())
                 {
-                    char c = (char) intC;
-                    if (c == '\n')
-                    {
-                        String command = sb.toString();
-                        Log(Level.FINE, "Received this: " + command);
-                        InetAddress address = this.socket.getInetAddress();
-                        Log(Level.INFO, "Read line from " + this.socket.getRemoteSocketAddress() + "(remote), " + address.getHostName() + "(hostname) " + address.getHostAddress() + "(hostaddress)");
-                        String originator = address.getHostName();
-                        DataOutputStream dos = new DataOutputStream(this.socket.getOutputStream());
-                        poller.commandReceived(command, originator, dos);
-                        if (singleRequestReply) {
-                            // Stop handling the connection after one interaction.
-                            this.socket.close();
-                            return;
-                        }
-                        sb.setLength(0);
-                    }
-                    else
-                    {
-                        sb.append(c);
-                    }
-                    if (sb.length() >= MAX_STR_LEN) {
-                        DataOutputStream dos = new DataOutputStream(this.socket.getOutputStream());
-                        poller.onError("MALMOERROR Input too long", dos);
-                        Log(Level.WARNING, "Input too long (greater than " + MAX_STR_LEN + ") - discarding.");
-                        break; // discard anything else we received
-                    }
+                    poller.onError("MALMOERROR Input too long", this.dos);
+                    this.dos.flush();
+                    Log(Level.WARNING, "Input too long (greater than " + MAX_STR_LEN + ") - discarding.");
                 }
             }
             catch (IOException e)
@@ -1,16 +1,17 @@
 package io.singularitynet.utils;
 
-import org.lwjgl.BufferUtils;
-
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.AsynchronousSocketChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.Arrays;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 
 public class TCPSocketChannel
@@ -20,6 +21,63 @@ public class TCPSocketChannel
     private int port;
     private String logname;
     public Exception exception;
+    // Reused by the gathering sendTCPBytes, so that sending a message allocates nothing of its own - only the
+    // channel's boxing of each write's byte count is left.
+    private final ByteBuffer lengthHeader = ByteBuffer.allocateDirect(4).order(ByteOrder.BIG_ENDIAN);
+    private ByteBuffer[] gatherBuffers = new ByteBuffer[4];
+    private final GatherCompletion gatherCompletion = new GatherCompletion();
+
+    /**
+     * Completion handler reused for every gathering write on this channel. The writing thread is passed as the
+     * attachment and parks until the write completes, so no future is needed per write.
+     */
+    private static final class GatherCompletion implements CompletionHandler<Long, Thread>
+    {
+        private volatile boolean done;
+        private long result;
+        private Throwable failure;
+
+        void reset()
+        {
+            this.failure = null;
+            this.done = false;
+        }
+
+        @Override
+        public void completed(Long result, Thread writer)
+        {
+            this.result = result;
+            this.done = true;
+            LockSupport.unpark(writer);
+        }
+
+        @Override
+        public void failed(Throwable exc, Thread writer)
+        {
+            this.failure = exc;
+            this.done = true;
+            LockSupport.unpark(writer);
+        }
+
+        /**
+         * Wait for the write to complete. The write has its own timeout, so this always returns; an interrupt is
+         * kept for the caller rather than abandoning a write that could then complete into the next one.
+         */
+        long await() throws ExecutionException
+        {
+            boolean interrupted = false;
+            while (!this.done)
+            {
+                LockSupport.park(this);
+                interrupted |= Thread.interrupted();
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            if (this.failure != null)
+                throw new ExecutionException(this.failure);
+            return this.result;
+        }
+    }
 
     /**
      * Create a TCPSocketChannel that is blocking but times out connects and writes.
@@ -166,9 +224,15 @@ public class TCPSocketChannel
     }
 
     /**
-     * Send byte buffer over TCP, including a length header.
-     * 
+     * Send a set of byte buffers over TCP as a single message, including a length header.<br>
+     * The buffers are handed to the socket with a gathering write, so they are not gathered into one message
+     * buffer first; each is sent from its position to its limit. Direct buffers are written as they are, but the
+     * JDK copies heap buffers into temporary direct ones, so callers sending often should pass direct buffers.
+     * The length header is reused between calls, which means a channel must not be written from more than one
+     * thread at once.
+     *
      * @param srcbuffers the bytes to send
+     * @param length the total number of bytes remaining in srcbuffers
      * @return true if the message was sent successfully
      */
     public boolean sendTCPBytes(ByteBuffer[] srcbuffers, int length)
@@ -176,27 +240,27 @@ public class TCPSocketChannel
         boolean success = false;
         try
         {
-            ByteBuffer header = createHeader(length);
-            Log(Level.INFO, "Bytes size: " + length);
-            ByteBuffer buffers = BufferUtils.createByteBuffer(length+header.remaining());
-            buffers.put(header);
-            for (ByteBuffer srcbuffer : srcbuffers) buffers.put(srcbuffer);
-            buffers.flip();
+            Log(Level.FINE, "Bytes size: " + length);
+            this.lengthHeader.clear();
+            this.lengthHeader.putInt(length);
+            this.lengthHeader.flip();
+            int count = srcbuffers.length + 1;
+            if (this.gatherBuffers.length < count)
+                this.gatherBuffers = new ByteBuffer[count];
+            this.gatherBuffers[0] = this.lengthHeader;
+            System.arraycopy(srcbuffers, 0, this.gatherBuffers, 1, srcbuffers.length);
             if (TCPUtils.isLogging())
             {
                 long t1 = System.nanoTime();
-                long bytesWritten = write(buffers);
+                long bytesWritten = gatherWrite(this.gatherBuffers, count);
                 long t2 = System.nanoTime();
                 double rate = 1000.0 * 1000.0 * 1000.0 * (double) (bytesWritten) / (1024.0 * (double) (t2 - t1));
                 Log(Level.INFO, "Sent " + bytesWritten + " bytes at " + rate + " Kb/s");
             }
             else
             {
-                write(buffers);
+                gatherWrite(this.gatherBuffers, count);
             }
-            buffers = null;
-            srcbuffers = null;
-            header = null;
             success = true;
             this.exception = null;
         }
@@ -206,6 +270,11 @@ public class TCPSocketChannel
             try { channel.close(); } catch (IOException ioe) {}
             this.exception = e;
         }
+        finally
+        {
+            // Don't keep the caller's buffers reachable between messages.
+            Arrays.fill(this.gatherBuffers, null);
+        }
         return success;
     }
 
@@ -225,10 +294,27 @@ public class TCPSocketChannel
         }
     }
 
-    private long write(ByteBuffer buffers) throws InterruptedException, TimeoutException, ExecutionException, IOException {
+    /**
+     * Write buffers[0..count) to the channel with gathering writes, looping until every buffer is drained.
+     * @return the number of bytes written.
+     */
+    private long gatherWrite(ByteBuffer[] buffers, int count) throws ExecutionException, IOException {
         long bytesWritten = 0;
-        bytesWritten += buffers.remaining();
-        safeWrite(buffers);
+        int offset = 0;
+        while (offset < count) {
+            if (!buffers[offset].hasRemaining()) {
+                offset++;
+                continue;
+            }
+            this.gatherCompletion.reset();
+            this.channel.write(buffers, offset, count - offset, TCPUtils.DEFAULT_SOCKET_TIMEOUT_MS, TimeUnit.MILLISECONDS,
+                    Thread.currentThread(), this.gatherCompletion);
+            long written = this.gatherCompletion.await();
+            if (written == 0) {
+                throw new IOException("async gathering write failed to send any bytes.");
+            }
+            bytesWritten += written;
+        }
         return bytesWritten;
     }
 }
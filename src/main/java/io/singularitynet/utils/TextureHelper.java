@@ -3,6 +3,7 @@ package io.singularitynet.utils;
 import com.mojang.blaze3d.platform.GlConst;
 import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.systems.RenderSystem;
+import net.minecraft.block.Block;
 import net.minecraft.client.MinecraftClient;
 import net.minecraft.client.gl.Framebuffer;
 import net.minecraft.client.gl.ShaderProgram;
@@ -13,6 +14,8 @@ import net.minecraft.client.render.VertexFormatElement;
 import net.minecraft.client.render.VertexFormats;
 import net.minecraft.client.texture.SpriteAtlasTexture;
 import net.minecraft.entity.Entity;
+import net.minecraft.entity.EntityType;
+import net.minecraft.registry.Registries;
 import net.minecraft.util.Identifier;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -23,9 +26,16 @@ import org.lwjgl.opengl.GL30;
 
 import java.io.BufferedInputStream;
 import java.io.InputStream;
+import java.nio.FloatBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.WeakHashMap;
 
 /*
  Short description
@@ -45,6 +55,8 @@ import java.util.Map;
      * a solid RGB for entities (from map or deterministic fallback),
      * a solid RGB for known misc textures,
      * or -1 to signal the block atlas path (shader uses UVs to derive colour).
+   With the instance channel on, uniform instanceId also writes a per-entity
+   id (numbered per frame) into a second, 16-bit colour attachment.
  - Extensibility: use setMobColours and setMiscTextureColours with keys:
      * mob/entity: by entity type string from mission config,
      * misc textures: by Identifier path, e.g. "textures/environment/sun.png".
@@ -75,6 +87,12 @@ public class TextureHelper {
 
     // Optional mapping from mob/entity identifiers to colours.
     private static Map<String, Integer> idealMobColours = null;
+    // Resolved colours per entity type and per entity texture; cleared whenever the mob colours change.
+    // Only touched from the render thread.
+    private static final Map<EntityType<?>, Integer> entityTypeColours = new IdentityHashMap<>();
+    private static final Map<Identifier, Integer> entityTextureColours = new IdentityHashMap<>();
+    // Entity textures can be created at runtime (eg skins), so the texture cache is emptied past this size.
+    private static final int MAX_CACHED_ENTITY_TEXTURES = 1024;
     // Optional mapping from texture identifiers (paths) to colours for misc elements (eg sun/moon).
     private static Map<String, Integer> miscTexturesToColours = null;
 
@@ -89,8 +107,10 @@ public class TextureHelper {
     // When true, force a solid per-block-type colour for the entire block draw
     // section (all binds within BlockRenderManager.renderBlock scope).
     private static volatile boolean strictBlockDraw = false;
-    // Current block type string being rendered (eg "minecraft:stone"), set via mixin.
-    private static String currentBlockType = null;
+    // Raw registry id of the block type being rendered, set via mixin; -1 when none.
+    private static int currentBlock = -1;
+    // Segmentation colour per block raw id, built when the colour map producer prepares.
+    private static volatile int[] blockColours = null;
     // Flag to indicate a block draw call is in progress
     private static volatile boolean drawingBlock = false;
 
@@ -101,11 +121,31 @@ public class TextureHelper {
     private static int uniformG = -1;
     private static int uniformB = -1;
 
-    // Cache of annotate ShaderPrograms keyed by attribute name list.
-    private static final Map<String, ShaderProgram> annotatePrograms = new HashMap<>();
+    // Cache of annotate ShaderPrograms keyed by vertex format identity.
+    private static final Map<VertexFormat, ShaderProgram> annotatePrograms = new IdentityHashMap<>();
+    // Annotate uniform handles and last-uploaded values per program (annotate or vanilla);
+    // weak so vanilla programs replaced by a resource reload can be collected.
+    private static final Map<ShaderProgram, AnnotateUniforms> annotateUniforms = new WeakHashMap<>();
+    // Coarse atlas grid (used only by debug or fallback paths) and sampling LOD for the block atlas.
+    private static final int ATLAS_GRID = 32;
+    private static final int ATLAS_LOD = 8;
 
     // Off-screen framebuffer used for the segmentation pass.
     private static SimpleFramebuffer segmentationFbo = null;
+    // Optional second colour attachment of the segmentation FBO holding a 16-bit entity instance id per pixel.
+    private static volatile boolean instanceChannel = false;
+    private static int instanceTexture = 0;
+    private static final int[] INSTANCE_DRAW_BUFFERS = {GL30.GL_COLOR_ATTACHMENT0, GL30.GL_COLOR_ATTACHMENT1};
+    private static final float[] INSTANCE_CLEAR = {0f, 0f, 0f, 0f};
+    // Instance ids are 16 bits; entities drawn after this many in one frame get id 0.
+    public static final int MAX_INSTANCES = 0xFFFF;
+    // Instance id of the entity being rendered, or 0. Only touched from the render thread.
+    private static int currentInstance = 0;
+    // Entities drawn so far this segmentation frame (instance id = index + 1), and their ids by entity id.
+    private static final List<EntityInstance> frameInstances = new ArrayList<>();
+    private static final Map<Integer, Integer> frameInstanceIds = new HashMap<>();
+    // Entities drawn in the last completed segmentation frame.
+    private static volatile List<EntityInstance> lastFrameInstances = List.of();
 
     // Pending colour to apply to annotate programs when they are bound.
     private static volatile int pendingR = 0;
@@ -114,6 +154,27 @@ public class TextureHelper {
     // Track last texture bound to help choose pending colour when a shader is set
     private static volatile Identifier lastBoundTexture = null;
 
+    // The colour map is rendered on every Nth world render only.
+    private static volatile int segmentationRenderInterval = 1;
+    private static long worldRendersSinceSegmentation = 0;
+    private static volatile boolean segmentationDueThisFrame = true;
+    // Number of segmentation frames completed; tells the producer whether the FBO holds a new image.
+    private static volatile long segmentationFramesRendered = 0;
+    // When true, the colour map is drawn alongside the normal world render instead of in a second render.
+    private static volatile boolean singlePassSegmentation = false;
+    // True while the normal world render is running and each of its draws is replayed into the segmentation FBO.
+    private static volatile boolean segmentationReplay = false;
+    // Replay is paused while vanilla draws things that have no place in the colour map (eg the sky).
+    private static volatile boolean segmentationReplayPaused = false;
+    private static boolean replayFailureLogged = false;
+    // Annotate programs fully bound once by the replay, so their sampler units are set and later replays can just switch to them.
+    private static final Map<ShaderProgram, Boolean> replayReadyPrograms = new IdentityHashMap<>();
+    private static final float[] REPLAY_MAT4 = new float[16];
+    private static final float[] REPLAY_VEC3 = new float[3];
+    private static final int[] REPLAY_VIEWPORT = new int[4];
+    private static final float[] REPLAY_CLEAR_COLOUR = new float[4];
+    private static final Identifier SHADOW_TEXTURE = Identifier.ofVanilla("textures/misc/shadow.png");
+
     // Debug: 0=off, 1=magenta, 2=UV debug, 3=frag debug
     private static volatile int segmentationDebugLevel = 0;
 
@@ -123,12 +184,17 @@ public class TextureHelper {
     private static boolean prevScissor = false;
     private static boolean prevStencil = false;
 
-    // Per-segmentation-frame diagnostics
+    // Per-segmentation-frame diagnostics, reset as each frame begins
     private static int segAtlasBinds = 0;
     private static int segEntityBinds = 0;
     private static int segOtherBinds = 0;
     private static int segProgramSwapsUV = 0;
     private static int segProgramSwapsNoUV = 0;
+    private static int segDrawCalls = 0;
+    private static int segProgramBinds = 0;
+    private static int segUniformUploads = 0;
+    // Counters of the last completed segmentation frame
+    private static volatile SegmentationFrameStats lastFrameStats = SegmentationFrameStats.EMPTY;
 
     // Last ChunkOffset captured from vanilla shader uniforms
     private static volatile float lastChunkOffsetX = 0f;
@@ -139,7 +205,7 @@ public class TextureHelper {
         lastChunkOffsetX = x;
         lastChunkOffsetY = y;
         lastChunkOffsetZ = z;
-        if (isProducingColourMap && colourmapFrame) {
+        if (isProducingColourMap && colourmapFrame && isSegmentationDebugMode()) {
             LOGGER.info("TextureHelper: captured ChunkOffset from vanilla -> ({}, {}, {})", x, y, z);
         }
     }
@@ -153,6 +219,7 @@ public class TextureHelper {
         LOGGER.info("TextureHelper: segmentation debug mode set to {} (level={})", on, segmentationDebugLevel);
     }
 
+    // Per-draw and per-frame logging of the segmentation pass is only done in debug mode.
     public static boolean isSegmentationDebugMode() {
         return segmentationDebugLevel != 0;
     }
@@ -207,6 +274,8 @@ public class TextureHelper {
         } else {
             idealMobColours = new HashMap<>(mobColours);
         }
+        entityTypeColours.clear();
+        entityTextureColours.clear();
     }
 
     /**
@@ -222,7 +291,8 @@ public class TextureHelper {
 
     public static void setCurrentEntity(Entity entity) {
         currentEntity = entity;
-        if (colourmapFrame && isProducingColourMap) {
+        currentInstance = (entity != null && instanceChannel) ? instanceFor(entity) : 0;
+        if (colourmapFrame && isProducingColourMap && isSegmentationDebugMode()) {
             if (entity != null) {
                 try {
                     LOGGER.info("TextureHelper: rendering entity type={} id={}", entity.getType().toString(), entity.getId());
@@ -233,6 +303,46 @@ public class TextureHelper {
         }
     }
 
+    /** Returns the entity's instance id for this frame, numbering entities from 1 as they are first drawn. */
+    private static int instanceFor(Entity entity) {
+        Integer known = frameInstanceIds.get(entity.getId());
+        if (known != null) return known;
+        if (frameInstances.size() >= MAX_INSTANCES) return 0;
+        int instance = frameInstances.size() + 1;
+        Identifier type = Registries.ENTITY_TYPE.getId(entity.getType());
+        frameInstances.add(new EntityInstance(instance, entity.getId(),
+                type != null ? type.toString() : entity.getType().toString(), entity.getUuid()));
+        frameInstanceIds.put(entity.getId(), instance);
+        return instance;
+    }
+
+    public static void setInstanceChannel(boolean on) {
+        instanceChannel = on;
+        LOGGER.info("TextureHelper: instance channel set to {}", on);
+    }
+
+    public static boolean isInstanceChannel() { return instanceChannel; }
+
+    /** Returns the entities drawn in the last completed segmentation frame, in instance id order. */
+    public static List<EntityInstance> getFrameInstances() {
+        return lastFrameInstances;
+    }
+
+    /** An entity drawn in a segmentation frame, and the instance id its pixels carry. */
+    public static final class EntityInstance {
+        public final int instance;
+        public final int entityId;
+        public final String type;
+        public final UUID uuid;
+
+        EntityInstance(int instance, int entityId, String type, UUID uuid) {
+            this.instance = instance;
+            this.entityId = entityId;
+            this.type = type;
+            this.uuid = uuid;
+        }
+    }
+
     public static void setStrictEntityDraw(boolean on) { strictEntityDraw = on; }
     public static boolean isStrictEntityDraw() { return strictEntityDraw; }
     public static void setStrictBlockDraw(boolean on) { strictBlockDraw = on; }
@@ -259,16 +369,60 @@ public class TextureHelper {
         }
     }
 
-    public static void setCurrentBlockType(String blockType) {
-        currentBlockType = blockType;
+    public static void setCurrentBlock(int rawId) {
+        currentBlock = rawId;
+    }
+
+    private static boolean hasCurrentBlock() { return currentBlock >= 0; }
+
+    /**
+     * Precomputes the segmentation colour of every registered block type,
+     * indexed by block raw id, so block draws look their colour up instead
+     * of hashing the block's id string.
+     */
+    public static void buildBlockColourTable() {
+        int[] table = new int[Registries.BLOCK.size()];
+        for (Block block : Registries.BLOCK) {
+            int rawId = Registries.BLOCK.getRawId(block);
+            if (rawId >= 0 && rawId < table.length) {
+                table[rawId] = getColourForBlockType(Registries.BLOCK.getId(block).toString());
+            }
+        }
+        blockColours = table;
+    }
+
+    public static void clearBlockColourTable() {
+        blockColours = null;
+    }
+
+    /** Returns the colour table as block id string -> RGB, for telling the agent what each colour means. */
+    public static Map<String, Integer> getBlockColourLegend() {
+        int[] table = blockColours;
+        Map<String, Integer> legend = new LinkedHashMap<>();
+        if (table == null) return legend;
+        for (int rawId = 0; rawId < table.length; rawId++) {
+            Block block = Registries.BLOCK.get(rawId);
+            if (block != null) {
+                legend.put(Registries.BLOCK.getId(block).toString(), table[rawId] & 0x00FFFFFF);
+            }
+        }
+        return legend;
+    }
+
+    private static int getColourForBlock(int rawId) {
+        int[] table = blockColours;
+        if (table != null && rawId >= 0 && rawId < table.length) return table[rawId];
+        // Table not built (or a block registered afterwards): derive the colour from its id.
+        Block block = Registries.BLOCK.get(rawId);
+        return getColourForBlockType(block != null ? Registries.BLOCK.getId(block).toString() : null);
     }
 
     public static void setDrawingBlock(boolean on) { drawingBlock = on; }
     public static boolean isDrawingBlock() { return drawingBlock; }
 
     public static void setPendingColourForCurrentBlock() {
-        if (currentBlockType != null && !currentBlockType.isEmpty()) {
-            int rgb = getColourForBlockType(currentBlockType) & 0x00FFFFFF;
+        if (hasCurrentBlock()) {
+            int rgb = getColourForBlock(currentBlock) & 0x00FFFFFF;
             pendingR = (rgb >> 16) & 0xFF;
             pendingG = (rgb >> 8) & 0xFF;
             pendingB = (rgb) & 0xFF;
@@ -294,6 +448,16 @@ public class TextureHelper {
 
     public static int getColourForEntity(Entity entity) {
         if (entity == null) return 0x000000;
+        EntityType<?> type = entity.getType();
+        Integer cached = entityTypeColours.get(type);
+        if (cached == null) {
+            cached = resolveColourForEntity(entity);
+            entityTypeColours.put(type, cached);
+        }
+        return cached;
+    }
+
+    private static int resolveColourForEntity(Entity entity) {
         // Prefer a stable, namespaced id for the entity type (eg "minecraft:zombie")
         String key;
         try {
@@ -334,6 +498,18 @@ public class TextureHelper {
      */
     private static int getFallbackEntityColourFromTexture(Identifier id) {
         if (id == null || id.getPath() == null) return -1;
+        Integer cached = entityTextureColours.get(id);
+        if (cached == null) {
+            if (entityTextureColours.size() >= MAX_CACHED_ENTITY_TEXTURES) {
+                entityTextureColours.clear();
+            }
+            cached = resolveFallbackEntityColourFromTexture(id);
+            entityTextureColours.put(id, cached);
+        }
+        return cached;
+    }
+
+    private static int resolveFallbackEntityColourFromTexture(Identifier id) {
         String p = id.getPath();
         // Expect paths like "textures/entity/chicken/chicken.png"
         String marker = "textures/entity/";
@@ -371,7 +547,7 @@ public class TextureHelper {
 
     /**
      * Fallback per-block colour derived from a block texture path when we
-     * don't have a currentBlockType. Produces a stable bright RGB from
+     * don't know the current block. Produces a stable bright RGB from
      * something like textures/block/<name>.png.
      */
     private static int getFallbackBlockColourFromTexture(Identifier id) {
@@ -422,6 +598,40 @@ public class TextureHelper {
         }
     }
 
+    /** Handles of a program's annotate uniforms, and the values last uploaded to them. */
+    private static final class AnnotateUniforms {
+        final GlUniform r;
+        final GlUniform g;
+        final GlUniform b;
+        final GlUniform debug;
+        final GlUniform alpha;
+        final GlUniform grid;
+        final GlUniform lod;
+        final GlUniform instance;
+        // Nothing uploaded yet; no real value is Integer.MIN_VALUE.
+        int lastR = Integer.MIN_VALUE;
+        int lastG = Integer.MIN_VALUE;
+        int lastB = Integer.MIN_VALUE;
+        int lastDebug = Integer.MIN_VALUE;
+        int lastAlpha = Integer.MIN_VALUE;
+        int lastGrid = Integer.MIN_VALUE;
+        int lastLod = Integer.MIN_VALUE;
+        int lastInstance = Integer.MIN_VALUE;
+
+        AnnotateUniforms(ShaderProgram program) {
+            r = program.getUniform("entityColourR");
+            g = program.getUniform("entityColourG");
+            b = program.getUniform("entityColourB");
+            debug = program.getUniform("debugMode");
+            alpha = program.getUniform("respectAlpha");
+            grid = program.getUniform("atlasGrid");
+            lod = program.getUniform("atlasLod");
+            instance = program.getUniform("instanceId");
+        }
+
+        boolean hasColour() { return r != null && g != null && b != null; }
+    }
+
     public static void onTextureBound(int unit, Identifier id) {
         if (!isProducingColourMap || !colourmapFrame) {
             lastBoundTexture = id;
@@ -437,7 +647,9 @@ public class TextureHelper {
                 if ("textures/environment/clouds.png".equals(p) ||
                     "textures/environment/sun.png".equals(p) ||
                     "textures/environment/moon_phases.png".equals(p)) {
-                    LOGGER.info("TextureHelper: ignoring env texture {} bind during segmentation pass", p);
+                    if (isSegmentationDebugMode()) {
+                        LOGGER.info("TextureHelper: ignoring env texture {} bind during segmentation pass", p);
+                    }
                     return;
                 }
             }
@@ -465,11 +677,11 @@ public class TextureHelper {
             }
         } else {
             // For block/world draws: prefer stable per-type colour whenever we know the current block type.
-            if (isDrawingBlock() || strictBlockDraw || (currentBlockType != null && !currentBlockType.isEmpty())) {
+            if (isDrawingBlock() || strictBlockDraw || hasCurrentBlock()) {
                 setPendingColourForCurrentBlock();
                 col = (pendingR < 0 || pendingG < 0 || pendingB < 0) ? -1 : ((pendingR << 16) | (pendingG << 8) | pendingB);
             } else {
-                // No current block type: try to derive a stable per-sprite block colour from the texture path.
+                // No current block: try to derive a stable per-sprite block colour from the texture path.
                 int fb = getFallbackBlockColourFromTexture(id);
                 if (fb != -1) {
                     col = fb & 0x00FFFFFF;
@@ -488,56 +700,12 @@ public class TextureHelper {
             pendingG = (col >> 8) & 0xFF;
             pendingB = (col) & 0xFF;
         }
-        if (LOGGER.isInfoEnabled()) {
+        if (isSegmentationDebugMode()) {
             LOGGER.info("Texture bound {} -> pending colour R:{} G:{} B:{}", id != null ? id.toString() : "<null>", pendingR, pendingG, pendingB);
         }
         ShaderProgram active = RenderSystem.getShader();
-        if (active != null) {
-            try {
-                active.bind();
-            } catch (Throwable t) {
-                LOGGER.warn("onTextureBound: active.bind failed: {}", t.toString());
-            }
-            GlUniform r = active.getUniform("entityColourR");
-            GlUniform g = active.getUniform("entityColourG");
-            GlUniform b = active.getUniform("entityColourB");
-            GlUniform dbg = active.getUniform("debugMode");
-            GlUniform alpha = active.getUniform("respectAlpha");
-            if (r != null && g != null && b != null) {
-            
-                r.set(pendingR);
-                g.set(pendingG);
-                b.set(pendingB);
-                r.upload();
-                g.upload();
-                b.upload();
-                LOGGER.info("Applied pending colour to ACTIVE program {} -> R:{} G:{} B:{}", active.getName(), pendingR, pendingG, pendingB);
-            } else {
-                LOGGER.info("Active program {} lacks annotate uniforms; will defer to swap handler", active.getName());
-            }
-        if (dbg != null) {
-            dbg.set(segmentationDebugLevel);
-            dbg.upload();
-            LOGGER.info("Applied debugMode={} to ACTIVE program {}", segmentationDebugLevel, active.getName());
-        }
-        if (alpha != null) {
-            alpha.set(respectOpacity ? 1 : 0);
-            alpha.upload();
-            LOGGER.info("Applied respectAlpha={} to ACTIVE program {}", (respectOpacity ? 1 : 0), active.getName());
-        }
-        GlUniform grid = active.getUniform("atlasGrid");
-        if (grid != null) {
-            int atlasGrid = 32; // classic coarse grid (used only by debug or fallback paths)
-            grid.set(atlasGrid);
-            grid.upload();
-            LOGGER.info("Applied atlasGrid={} to ACTIVE program {}", atlasGrid, active.getName());
-        }
-        GlUniform lod = active.getUniform("atlasLod");
-        if (lod != null) {
-            lod.set(8);
-            lod.upload();
-            LOGGER.info("Applied atlasLod={} to ACTIVE program {}", 8, active.getName());
-        }
+        if (active != null && !uploadAnnotateUniforms(active, false) && isSegmentationDebugMode()) {
+            LOGGER.info("Active program {} lacks annotate uniforms; will defer to swap handler", active.getName());
         }
     }
 
@@ -545,28 +713,11 @@ public class TextureHelper {
         onTextureBound(-1, id);
     }
 
+    /** Leaves the colour to the shader's block atlas path; uploaded by the next applyPendingColourToProgram. */
     public static void setPendingForBlockAtlas() {
         pendingR = -1;
         pendingG = -1;
         pendingB = -1;
-        ShaderProgram active = RenderSystem.getShader();
-        if (active != null) {
-            try {
-                active.bind();
-            } catch (Throwable t) {
-                LOGGER.warn("setPendingForBlockAtlas: active.bind failed: {}", t.toString());
-            }
-            GlUniform r = active.getUniform("entityColourR");
-            GlUniform g = active.getUniform("entityColourG");
-            GlUniform b = active.getUniform("entityColourB");
-            if (r != null && g != null && b != null) {
-            
-                r.set(-1);
-                g.set(-1);
-                b.set(-1);
-                LOGGER.info("Applied block-atlas override to ACTIVE program {} -> R:-1 G:-1 B:-1", active.getName());
-            }
-        }
     }
 
     public static Identifier getLastBoundTexture() {
@@ -585,8 +736,8 @@ public class TextureHelper {
             boolean isAtlas = SpriteAtlasTexture.BLOCK_ATLAS_TEXTURE.equals(lastBoundTexture)
                     || (lastBoundTexture.getPath() != null && lastBoundTexture.getPath().contains("textures/atlas/"));
             if (!isAtlas) return;
-            if (currentBlockType == null || currentBlockType.isEmpty()) return;
-            int rgb = getColourForBlockType(currentBlockType) & 0x00FFFFFF;
+            if (!hasCurrentBlock()) return;
+            int rgb = getColourForBlock(currentBlock) & 0x00FFFFFF;
             pendingR = (rgb >> 16) & 0xFF;
             pendingG = (rgb >> 8) & 0xFF;
             pendingB = (rgb) & 0xFF;
@@ -594,13 +745,13 @@ public class TextureHelper {
     }
 
     public static void applyPendingColourToProgram(ShaderProgram program) {
+        applyPendingColourToProgram(program, false);
+    }
+
+    /** As {@link #applyPendingColourToProgram(ShaderProgram)}; {@code bound} says the caller has already bound the program. */
+    private static void applyPendingColourToProgram(ShaderProgram program, boolean bound) {
         if (program == null) return;
-        try {
-            program.bind();
-        } catch (Throwable t) {
-            LOGGER.warn("applyPendingColourToProgram: program.bind failed: {}", t.toString());
-        }
-        if (isProducingColourMap && colourmapFrame) {
+        if (isAnnotatingDraws()) {
             // Strongly prefer stable colours per entity/block at draw time.
             if (hasCurrentEntity() || strictEntityDraw) {
                 setPendingColourForCurrentEntity();
@@ -615,7 +766,7 @@ public class TextureHelper {
         // we don't have currentEntity, avoid atlas fallback by hashing the path.
         try {
             Identifier last = lastBoundTexture;
-            if (isProducingColourMap && colourmapFrame && last != null) {
+            if (isAnnotatingDraws() && last != null) {
                 String p = last.getPath();
                 boolean pendIsAtlas = (pendingR < 0 || pendingG < 0 || pendingB < 0);
                 if (p != null && p.startsWith("textures/entity/") && !hasCurrentEntity() && pendIsAtlas) {
@@ -625,46 +776,100 @@ public class TextureHelper {
                         pendingG = (fb >> 8) & 0xFF;
                         pendingB = (fb) & 0xFF;
                     }
-                } else if ((SpriteAtlasTexture.BLOCK_ATLAS_TEXTURE.equals(last) || (p != null && p.contains("textures/atlas/"))) && (isDrawingBlock() || currentBlockType != null)) {
+                } else if ((SpriteAtlasTexture.BLOCK_ATLAS_TEXTURE.equals(last) || (p != null && p.contains("textures/atlas/"))) && (isDrawingBlock() || hasCurrentBlock())) {
                     // Ensure blocks keep their per-type colour even if a late bind overwrote pending to -1
                     setPendingColourForCurrentBlock();
                 }
             }
         } catch (Throwable ignored) {}
-        GlUniform r = program.getUniform("entityColourR");
-        GlUniform g = program.getUniform("entityColourG");
-        GlUniform b = program.getUniform("entityColourB");
-        GlUniform dbg = program.getUniform("debugMode");
-        GlUniform alpha = program.getUniform("respectAlpha");
-        GlUniform grid = program.getUniform("atlasGrid");
-        if (r != null && g != null && b != null) {
-            
-            r.set(pendingR);
-            g.set(pendingG);
-            b.set(pendingB);
-            r.upload();
-            g.upload();
-            b.upload();
-            LOGGER.info("Applied pending colour to PROGRAM {} -> R:{} G:{} B:{}", program.getName(), pendingR, pendingG, pendingB);
-        } else {
+        if (!uploadAnnotateUniforms(program, bound) && isSegmentationDebugMode()) {
             LOGGER.warn("Program {} missing annotate uniforms; colours not applied", program.getName());
         }
-        if (dbg != null) {
-            dbg.set(segmentationDebugLevel);
-            dbg.upload();
-            LOGGER.info("Applied debugMode={} to PROGRAM {}", segmentationDebugLevel, program.getName());
+    }
+
+    /**
+     * Uploads the pending colour, debug level, alpha mode and atlas settings to
+     * the program's annotate uniforms. Only values that differ from what was
+     * last uploaded to this program are sent, and the program is bound only if
+     * something has to be sent and the caller has not bound it already.
+     *
+     * @return false if the program has no annotate colour uniforms
+     */
+    private static boolean uploadAnnotateUniforms(ShaderProgram program, boolean bound) {
+        AnnotateUniforms u = annotateUniforms.get(program);
+        if (u == null) {
+            u = new AnnotateUniforms(program);
+            annotateUniforms.put(program, u);
         }
-        if (alpha != null) {
-            alpha.set(respectOpacity ? 1 : 0);
-            alpha.upload();
-            LOGGER.info("Applied respectAlpha={} to PROGRAM {}", (respectOpacity ? 1 : 0), program.getName());
+        int r = pendingR;
+        int g = pendingG;
+        int b = pendingB;
+        int debug = segmentationDebugLevel;
+        int alpha = respectOpacity ? 1 : 0;
+        int instance = currentInstance;
+        boolean colour = u.hasColour() && (r != u.lastR || g != u.lastG || b != u.lastB);
+        boolean sendDebug = u.debug != null && debug != u.lastDebug;
+        boolean sendAlpha = u.alpha != null && alpha != u.lastAlpha;
+        boolean sendGrid = u.grid != null && ATLAS_GRID != u.lastGrid;
+        boolean sendLod = u.lod != null && ATLAS_LOD != u.lastLod;
+        boolean sendInstance = u.instance != null && instance != u.lastInstance;
+        if (!colour && !sendDebug && !sendAlpha && !sendGrid && !sendLod && !sendInstance) {
+            return u.hasColour();
         }
-        if (grid != null) {
-            int atlasGrid = 32;
-            grid.set(atlasGrid);
-            grid.upload();
-            LOGGER.info("Applied atlasGrid={} to PROGRAM {}", atlasGrid, program.getName());
+        if (!bound) {
+            segProgramBinds++;
+            try {
+                program.bind();
+            } catch (Throwable t) {
+                LOGGER.warn("uploadAnnotateUniforms: program.bind failed: {}", t.toString());
+            }
+        }
+        if (colour) {
+            u.r.set(r);
+            u.g.set(g);
+            u.b.set(b);
+            u.r.upload();
+            u.g.upload();
+            u.b.upload();
+            u.lastR = r;
+            u.lastG = g;
+            u.lastB = b;
+            segUniformUploads += 3;
+            if (isSegmentationDebugMode()) {
+                LOGGER.info("Applied pending colour to PROGRAM {} -> R:{} G:{} B:{}", program.getName(), r, g, b);
+            }
+        }
+        if (sendDebug) {
+            u.debug.set(debug);
+            u.debug.upload();
+            u.lastDebug = debug;
+            segUniformUploads++;
+        }
+        if (sendAlpha) {
+            u.alpha.set(alpha);
+            u.alpha.upload();
+            u.lastAlpha = alpha;
+            segUniformUploads++;
         }
+        if (sendGrid) {
+            u.grid.set(ATLAS_GRID);
+            u.grid.upload();
+            u.lastGrid = ATLAS_GRID;
+            segUniformUploads++;
+        }
+        if (sendLod) {
+            u.lod.set(ATLAS_LOD);
+            u.lod.upload();
+            u.lastLod = ATLAS_LOD;
+            segUniformUploads++;
+        }
+        if (sendInstance) {
+            u.instance.set(instance);
+            u.instance.upload();
+            u.lastInstance = instance;
+            segUniformUploads++;
+        }
+        return u.hasColour();
     }
 
     private static void ensureInitialised() {
@@ -681,9 +886,7 @@ public class TextureHelper {
     }
 
     public static ShaderProgram getAnnotateProgramForFormat(VertexFormat format) {
-        java.util.List<String> names = format.getAttributeNames();
-        String key = String.join(",", names);
-        ShaderProgram prog = annotatePrograms.get(key);
+        ShaderProgram prog = annotatePrograms.get(format);
         if (prog != null) return prog;
 
         boolean hasUv = format.has(VertexFormatElement.UV_0);
@@ -707,22 +910,23 @@ public class TextureHelper {
 
         try {
             prog = new ShaderProgram(MinecraftClient.getInstance().getResourceManager(), vName, format);
-            annotatePrograms.put(key, prog);
+            annotatePrograms.put(format, prog);
             return prog;
         } catch (Exception e) {
-            LOGGER.warn("Failed to create annotate program for format {} using '{}': {}", key, vName, e.getMessage());
+            LOGGER.warn("Failed to create annotate program for format {} using '{}': {}", format, vName, e.getMessage());
             try {
                 String fbName = hasUv ? "annotate_position_tex" : "annotate_position";
                 VertexFormat fbFormat = hasUv ? VertexFormats.POSITION_TEXTURE : VertexFormats.POSITION;
-                String fbKey = String.join(",", fbFormat.getAttributeNames());
-                ShaderProgram fallback = annotatePrograms.get(fbKey);
+                ShaderProgram fallback = annotatePrograms.get(fbFormat);
                 if (fallback == null) {
                     fallback = new ShaderProgram(MinecraftClient.getInstance().getResourceManager(), fbName, fbFormat);
-                    annotatePrograms.put(fbKey, fallback);
+                    annotatePrograms.put(fbFormat, fallback);
                 }
+                // Remember the fallback for this format too, so the failing program is not rebuilt every draw.
+                annotatePrograms.put(format, fallback);
                 return fallback;
             } catch (Exception ex) {
-                throw new RuntimeException("No annotate shader available for format: " + key, ex);
+                throw new RuntimeException("No annotate shader available for format: " + format, ex);
             }
         }
     }
@@ -788,6 +992,59 @@ public class TextureHelper {
             }
             segmentationFbo = new SimpleFramebuffer(width, height, true, MinecraftClient.IS_SYSTEM_MAC);
             LOGGER.info("TextureHelper: created/updated segmentation FBO {} size {}x{}", segmentationFbo.fbo, width, height);
+            deleteInstanceTexture();
+        }
+        if (instanceChannel && instanceTexture == 0) {
+            attachInstanceTexture();
+        }
+    }
+
+    /** Adds the 16-bit instance id target to the segmentation FBO as its second colour attachment. */
+    private static void attachInstanceTexture() {
+        int previousTexture = GL11.glGetInteger(GL11.GL_TEXTURE_BINDING_2D);
+        int previousDrawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        try {
+            instanceTexture = GL11.glGenTextures();
+            GlStateManager._bindTexture(instanceTexture);
+            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
+            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
+            GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL30.GL_R16, segmentationFbo.textureWidth, segmentationFbo.textureHeight,
+                    0, GL11.GL_RED, GL11.GL_UNSIGNED_SHORT, (java.nio.ByteBuffer) null);
+            GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, segmentationFbo.fbo);
+            GL30.glFramebufferTexture2D(GL30.GL_DRAW_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT1, GL11.GL_TEXTURE_2D, instanceTexture, 0);
+            GL20.glDrawBuffers(INSTANCE_DRAW_BUFFERS);
+            LOGGER.info("TextureHelper: attached instance id target {} to segmentation FBO {}", instanceTexture, segmentationFbo.fbo);
+        } finally {
+            GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, previousDrawFb);
+            GlStateManager._bindTexture(previousTexture);
+        }
+    }
+
+    private static void deleteInstanceTexture() {
+        if (instanceTexture != 0) {
+            GL11.glDeleteTextures(instanceTexture);
+            instanceTexture = 0;
+        }
+    }
+
+    /** Returns true if the segmentation FBO has an instance id target, read from GL_COLOR_ATTACHMENT1. */
+    public static boolean hasInstanceTarget() {
+        return segmentationFbo != null && instanceTexture != 0;
+    }
+
+    /** Draws to the instance id target as well as the colour map, if there is one; the segmentation FBO must be bound. */
+    private static void selectSegmentationDrawBuffers() {
+        if (instanceTexture != 0) {
+            GL20.glDrawBuffers(INSTANCE_DRAW_BUFFERS);
+        } else {
+            GL30.glDrawBuffer(GL30.GL_COLOR_ATTACHMENT0);
+        }
+    }
+
+    /** Clears the instance id target to 0 (no entity) after the colour map has been cleared to the sky colour. */
+    private static void clearInstanceTarget() {
+        if (instanceTexture != 0) {
+            GL30.glClearBufferfv(GL11.GL_COLOR, 1, INSTANCE_CLEAR);
         }
     }
 
@@ -799,6 +1056,7 @@ public class TextureHelper {
         if (segmentationFbo != null) {
             try {
                 segmentationFbo.delete();
+                deleteInstanceTexture();
             } catch (Throwable ignored) {}
             segmentationFbo = null;
             LOGGER.info("TextureHelper: destroyed segmentation FBO");
@@ -815,16 +1073,16 @@ public class TextureHelper {
     private static int prevProgram = 0;
 
     public static void beginSegmentationPass() {
+        // Picks up a vereya.seg.debug override once per frame rather than on every draw.
+        getSegmentationDebugLevel();
         if (segmentationFbo != null) {
-            segAtlasBinds = segEntityBinds = segOtherBinds = 0;
-            segProgramSwapsUV = segProgramSwapsNoUV = 0;
-            try {
+            resetFrameCounters();
+            boolean traced = isSegmentationDebugMode();
+            if (traced) {
                 LOGGER.info("TextureHelper: beginSegPass (debugLevel={}) FBO={} size={}x{}", segmentationDebugLevel,
                         segmentationFbo.fbo,
                         segmentationFbo.textureWidth,
                         segmentationFbo.textureHeight);
-            } catch (Throwable t) {
-                LOGGER.warn("TextureHelper: logging beginSegPass failed: {}", t.toString());
             }
             // Capture GL state before we mutate it
             try {
@@ -849,7 +1107,7 @@ public class TextureHelper {
                 LOGGER.warn("TextureHelper: explicit FBO bind failed: {}", t.toString());
             }
             try {
-                GL30.glDrawBuffer(GL30.GL_COLOR_ATTACHMENT0);
+                selectSegmentationDrawBuffers();
                 GL11.glReadBuffer(GL30.GL_COLOR_ATTACHMENT0);
                 GL11.glViewport(0, 0, segmentationFbo.textureWidth, segmentationFbo.textureHeight);
                 try {
@@ -884,30 +1142,35 @@ public class TextureHelper {
                     GL11.glClearColor(cr, cg, cb, 1f);
                 }
                 GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+                clearInstanceTarget();
             } catch (Throwable t) {
                 LOGGER.warn("TextureHelper: manual clear failed: {}", t.toString());
             }
-            try {
-                int fb = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
-                if (fb == segmentationFbo.fbo) {
-                    java.nio.ByteBuffer px = org.lwjgl.BufferUtils.createByteBuffer(4);
-                    GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
-                    GL11.glReadPixels(0, 0, 1, 1, GL12.GL_BGRA, GL11.GL_UNSIGNED_BYTE, px);
-                    int sample = 0;
-                    for (int k = 0; k < 4; k++) sample |= (px.get(k) & 0xFF);
-                    LOGGER.info("TextureHelper: post-clear 1x1 BGRA sample_or={} (0 implies clear not applied)", sample);
-                } else {
-                    LOGGER.info("TextureHelper: post-clear read skipped; READ_FB={} not seg FBO {}", fb, segmentationFbo.fbo);
+            if (traced) {
+                try {
+                    int fb = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+                    if (fb == segmentationFbo.fbo) {
+                        java.nio.ByteBuffer px = org.lwjgl.BufferUtils.createByteBuffer(4);
+                        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+                        GL11.glReadPixels(0, 0, 1, 1, GL12.GL_BGRA, GL11.GL_UNSIGNED_BYTE, px);
+                        int sample = 0;
+                        for (int k = 0; k < 4; k++) sample |= (px.get(k) & 0xFF);
+                        LOGGER.info("TextureHelper: post-clear 1x1 BGRA sample_or={} (0 implies clear not applied)", sample);
+                    } else {
+                        LOGGER.info("TextureHelper: post-clear read skipped; READ_FB={} not seg FBO {}", fb, segmentationFbo.fbo);
+                    }
+                } catch (Throwable t) {
+                    LOGGER.warn("TextureHelper: post-clear read failed: {}", t.toString());
                 }
-            } catch (Throwable t) {
-                LOGGER.warn("TextureHelper: post-clear read failed: {}", t.toString());
             }
             try {
                 prevBlend = GL11.glIsEnabled(GL11.GL_BLEND);
                 prevDepth = GL11.glIsEnabled(GL11.GL_DEPTH_TEST);
                 prevScissor = GL11.glIsEnabled(GL11.GL_SCISSOR_TEST);
                 prevStencil = GL11.glIsEnabled(GL11.GL_STENCIL_TEST);
-                LOGGER.info("TextureHelper: beginSegPass before state -> BLEND={} DEPTH={} SCISSOR={} STENCIL={}", prevBlend, prevDepth, prevScissor, prevStencil);
+                if (traced) {
+                    LOGGER.info("TextureHelper: beginSegPass before state -> BLEND={} DEPTH={} SCISSOR={} STENCIL={}", prevBlend, prevDepth, prevScissor, prevStencil);
+                }
                 GL11.glDisable(GL11.GL_BLEND);
                 GL11.glDisable(GL11.GL_SCISSOR_TEST);
                 GL11.glDisable(GL11.GL_STENCIL_TEST);
@@ -916,47 +1179,54 @@ public class TextureHelper {
                 if (segmentationDebugLevel != 0) {
                     GL11.glDisable(GL11.GL_DEPTH_TEST);
                 }
-                boolean blendAfter = GL11.glIsEnabled(GL11.GL_BLEND);
-                boolean depthAfter = GL11.glIsEnabled(GL11.GL_DEPTH_TEST);
-                boolean scissorAfter = GL11.glIsEnabled(GL11.GL_SCISSOR_TEST);
-                boolean stencilAfter = GL11.glIsEnabled(GL11.GL_STENCIL_TEST);
-                boolean cullAfter = GL11.glIsEnabled(GL11.GL_CULL_FACE);
-                LOGGER.info("TextureHelper: beginSegPass after state -> BLEND={} DEPTH={} SCISSOR={} STENCIL={} CULL={}", blendAfter, depthAfter, scissorAfter, stencilAfter, cullAfter);
+                if (traced) {
+                    boolean blendAfter = GL11.glIsEnabled(GL11.GL_BLEND);
+                    boolean depthAfter = GL11.glIsEnabled(GL11.GL_DEPTH_TEST);
+                    boolean scissorAfter = GL11.glIsEnabled(GL11.GL_SCISSOR_TEST);
+                    boolean stencilAfter = GL11.glIsEnabled(GL11.GL_STENCIL_TEST);
+                    boolean cullAfter = GL11.glIsEnabled(GL11.GL_CULL_FACE);
+                    LOGGER.info("TextureHelper: beginSegPass after state -> BLEND={} DEPTH={} SCISSOR={} STENCIL={} CULL={}", blendAfter, depthAfter, scissorAfter, stencilAfter, cullAfter);
+                }
             } catch (Throwable t) {
                 LOGGER.warn("TextureHelper: beginSegPass state mutate failed: {}", t.toString());
             }
-            try {
-                int drawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
-                int readFb = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
-                int drawBuf = GL11.glGetInteger(GL11.GL_DRAW_BUFFER);
-                int readBuf = GL11.glGetInteger(GL11.GL_READ_BUFFER);
-                boolean rd = false;
+            if (traced) {
                 try {
-                    rd = GL11.glIsEnabled(GL30.GL_RASTERIZER_DISCARD);
+                    int drawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+                    int readFb = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+                    int drawBuf = GL11.glGetInteger(GL11.GL_DRAW_BUFFER);
+                    int readBuf = GL11.glGetInteger(GL11.GL_READ_BUFFER);
+                    boolean rd = false;
+                    try {
+                        rd = GL11.glIsEnabled(GL30.GL_RASTERIZER_DISCARD);
+                    } catch (Throwable t) {
+                        LOGGER.warn("TextureHelper: query RASTERIZER_DISCARD failed: {}", t.toString());
+                    }
+                    LOGGER.info("TextureHelper: beginSegPass -> DRAW_FB={} READ_FB={} DRAW_BUF={} READ_BUF={} RASTERIZER_DISCARD={}", drawFb, readFb, drawBuf, readBuf, rd);
                 } catch (Throwable t) {
-                    LOGGER.warn("TextureHelper: query RASTERIZER_DISCARD failed: {}", t.toString());
+                    LOGGER.warn("TextureHelper: beginSegPass state query failed: {}", t.toString());
                 }
-                LOGGER.info("TextureHelper: beginSegPass -> DRAW_FB={} READ_FB={} DRAW_BUF={} READ_BUF={} RASTERIZER_DISCARD={}", drawFb, readFb, drawBuf, readBuf, rd);
-            } catch (Throwable t) {
-                LOGGER.warn("TextureHelper: beginSegPass state query failed: {}", t.toString());
             }
         }
     }
 
     public static void endSegmentationPass() {
         if (segmentationFbo != null) {
-            try {
-                GlStateManager._glBindFramebuffer(GlConst.GL_READ_FRAMEBUFFER, segmentationFbo.fbo);
-                GL11.glReadBuffer(GL30.GL_COLOR_ATTACHMENT0);
-                GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
-                java.nio.ByteBuffer px = org.lwjgl.BufferUtils.createByteBuffer(4);
-                GL11.glReadPixels(0, 0, 1, 1, GL12.GL_BGRA, GL11.GL_UNSIGNED_BYTE, px);
-                int sample = 0;
-                for (int k = 0; k < 4; k++) sample |= (px.get(k) & 0xFF);
-                LOGGER.info("TextureHelper: endSegPass 1x1 BGRA sample_or={} (0 implies black)", sample);
-                LOGGER.info("TextureHelper: seg frame binds -> atlas={} entity={} other={}, program swaps -> withUV={} withoutUV={} ", segAtlasBinds, segEntityBinds, segOtherBinds, segProgramSwapsUV, segProgramSwapsNoUV);
-            } catch (Throwable t) {
-                LOGGER.warn("TextureHelper: endSegPass sample failed: {}", t.toString());
+            endFrameCounters();
+            boolean traced = isSegmentationDebugMode();
+            if (traced) {
+                try {
+                    GlStateManager._glBindFramebuffer(GlConst.GL_READ_FRAMEBUFFER, segmentationFbo.fbo);
+                    GL11.glReadBuffer(GL30.GL_COLOR_ATTACHMENT0);
+                    GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+                    java.nio.ByteBuffer px = org.lwjgl.BufferUtils.createByteBuffer(4);
+                    GL11.glReadPixels(0, 0, 1, 1, GL12.GL_BGRA, GL11.GL_UNSIGNED_BYTE, px);
+                    int sample = 0;
+                    for (int k = 0; k < 4; k++) sample |= (px.get(k) & 0xFF);
+                    LOGGER.info("TextureHelper: endSegPass 1x1 BGRA sample_or={} (0 implies black)", sample);
+                } catch (Throwable t) {
+                    LOGGER.warn("TextureHelper: endSegPass sample failed: {}", t.toString());
+                }
             }
             segmentationFbo.endWrite();
             try { GL20.glUseProgram(prevProgram); } catch (Throwable ignored) {}
@@ -982,24 +1252,223 @@ public class TextureHelper {
             } catch (Throwable t) {
                 LOGGER.warn("TextureHelper: endSegPass restore state failed: {}", t.toString());
             }
-            try {
-                int drawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
-                int readFb = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
-                int drawBuf = GL11.glGetInteger(GL11.GL_DRAW_BUFFER);
-                int readBuf = GL11.glGetInteger(GL11.GL_READ_BUFFER);
-                boolean rd = false;
+            if (traced) {
                 try {
-                    rd = GL11.glIsEnabled(GL30.GL_RASTERIZER_DISCARD);
+                    int drawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+                    int readFb = GL11.glGetInteger(GL30.GL_READ_FRAMEBUFFER_BINDING);
+                    int drawBuf = GL11.glGetInteger(GL11.GL_DRAW_BUFFER);
+                    int readBuf = GL11.glGetInteger(GL11.GL_READ_BUFFER);
+                    boolean rd = false;
+                    try {
+                        rd = GL11.glIsEnabled(GL30.GL_RASTERIZER_DISCARD);
+                    } catch (Throwable t) {
+                        LOGGER.warn("TextureHelper: query RASTERIZER_DISCARD at endSegPass failed: {}", t.toString());
+                    }
+                    LOGGER.info("TextureHelper: endSegPass -> DRAW_FB={} READ_FB={} DRAW_BUF={} READ_BUF={} RASTERIZER_DISCARD={}", drawFb, readFb, drawBuf, readBuf, rd);
                 } catch (Throwable t) {
-                    LOGGER.warn("TextureHelper: query RASTERIZER_DISCARD at endSegPass failed: {}", t.toString());
+                    LOGGER.warn("TextureHelper: endSegPass state query failed: {}", t.toString());
                 }
-                LOGGER.info("TextureHelper: endSegPass -> DRAW_FB={} READ_FB={} DRAW_BUF={} READ_BUF={} RASTERIZER_DISCARD={}", drawFb, readFb, drawBuf, readBuf, rd);
-            } catch (Throwable t) {
-                LOGGER.warn("TextureHelper: endSegPass state query failed: {}", t.toString());
             }
         }
     }
 
+    /**
+     * Chooses the segmentation colour for the draw call about to be issued: the
+     * current block type, the current entity, an entity texture fallback, or
+     * the block atlas path in the shader.
+     */
+    public static void selectPendingColourForDraw() {
+        // If drawing blocks and we know the current block type, force a stable
+        // per-type colour regardless of the last bound texture.
+        if (isDrawingBlock()) {
+            setPendingColourForCurrentBlock();
+        } else if (hasCurrentEntity()) {
+            setPendingColourForCurrentEntity();
+        } else {
+            // No current entity: applyPendingColourToProgram resolves entity
+            // textures to a stable colour from the last-bound id; else atlas.
+            Identifier last = lastBoundTexture;
+            String p = last != null ? last.getPath() : null;
+            if (p == null || !p.startsWith("textures/entity/")) {
+                setPendingForBlockAtlas();
+            }
+        }
+    }
+
+    public static void setSegmentationRenderInterval(int interval) {
+        segmentationRenderInterval = Math.max(1, interval);
+        worldRendersSinceSegmentation = 0;
+    }
+
+    /**
+     * Called as each (outer) world render starts; decides whether the colour
+     * map is rendered for this frame.
+     */
+    public static boolean beginSegmentationFrame() {
+        segmentationDueThisFrame = worldRendersSinceSegmentation++ % segmentationRenderInterval == 0;
+        return segmentationDueThisFrame;
+    }
+
+    public static boolean isSegmentationDueThisFrame() { return segmentationDueThisFrame; }
+
+    public static long getSegmentationFramesRendered() { return segmentationFramesRendered; }
+
+    public static void setSinglePassSegmentation(boolean on) {
+        singlePassSegmentation = on;
+        LOGGER.info("TextureHelper: single-pass segmentation set to {}", on);
+    }
+
+    public static boolean isSinglePassSegmentation() { return singlePassSegmentation; }
+
+    public static boolean isSegmentationReplay() { return segmentationReplay; }
+
+    public static void setSegmentationReplayPaused(boolean paused) { segmentationReplayPaused = paused; }
+
+    /**
+     * True while draw calls are being coloured for the colour map, either in the
+     * second segmentation render or replayed from the normal render.
+     */
+    public static boolean isAnnotatingDraws() {
+        return isProducingColourMap && (colourmapFrame || segmentationReplay);
+    }
+
+    /**
+     * Starts a single-pass segmentation frame: clears the segmentation FBO to
+     * the sky colour and replays every following world draw into it until
+     * {@link #endSegmentationReplay()}. Does nothing until the producer has
+     * created the FBO.
+     */
+    public static void beginSegmentationReplay() {
+        if (segmentationFbo == null) {
+            return;
+        }
+        int drawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        boolean scissor = GL11.glIsEnabled(GL11.GL_SCISSOR_TEST);
+        GL11.glGetFloatv(GL11.GL_COLOR_CLEAR_VALUE, REPLAY_CLEAR_COLOUR);
+        try {
+            if (scissor) GL11.glDisable(GL11.GL_SCISSOR_TEST);
+            GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, segmentationFbo.fbo);
+            int sky = 0;
+            Object renderer = getSkyRenderer();
+            if (renderer instanceof BlankSkyRenderer) {
+                BlankSkyRenderer bs = (BlankSkyRenderer) renderer;
+                sky = ((bs.r & 0xFF) << 16) | ((bs.g & 0xFF) << 8) | (bs.b & 0xFF);
+            }
+            GL11.glClearColor(((sky >> 16) & 0xFF) / 255.0f, ((sky >> 8) & 0xFF) / 255.0f, (sky & 0xFF) / 255.0f, 1f);
+            GL11.glClear(GL11.GL_COLOR_BUFFER_BIT | GL11.GL_DEPTH_BUFFER_BIT);
+            clearInstanceTarget();
+        } finally {
+            GL11.glClearColor(REPLAY_CLEAR_COLOUR[0], REPLAY_CLEAR_COLOUR[1], REPLAY_CLEAR_COLOUR[2], REPLAY_CLEAR_COLOUR[3]);
+            GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, drawFb);
+            if (scissor) GL11.glEnable(GL11.GL_SCISSOR_TEST);
+        }
+        resetFrameCounters();
+        segmentationReplayPaused = false;
+        segmentationReplay = true;
+    }
+
+    public static void endSegmentationReplay() {
+        if (segmentationReplay) {
+            endFrameCounters();
+        }
+        segmentationReplay = false;
+        segmentationReplayPaused = false;
+        currentEntity = null;
+        currentInstance = 0;
+        strictEntityDraw = false;
+    }
+
+    /**
+     * Replays the draw call vanilla has just issued into the segmentation FBO
+     * with the annotate program for the same vertex format. The vertex array,
+     * index buffer and textures vanilla bound are still current, so the
+     * geometry is drawn again as-is; only the program, target, viewport and
+     * blending are switched, and they are put back before returning. Depth
+     * testing and writes follow vanilla's state against the FBO's own depth.
+     */
+    public static void replayDrawIntoSegmentation(int mode, int count, int type) {
+        if (segmentationReplayPaused || segmentationFbo == null || SHADOW_TEXTURE.equals(lastBoundTexture)) {
+            return;
+        }
+        ShaderProgram vanilla = RenderSystem.getShader();
+        if (vanilla == null) {
+            return;
+        }
+        ShaderProgram annotate;
+        try {
+            annotate = getAnnotateProgramForFormat(vanilla.getFormat());
+        } catch (RuntimeException e) {
+            if (!replayFailureLogged) {
+                LOGGER.warn("TextureHelper: not replaying {} draws into the colour map: {}", vanilla.getName(), e.getMessage());
+                replayFailureLogged = true;
+            }
+            return;
+        }
+        selectPendingColourForDraw();
+        // The first replay with a program binds it properly; after that its sampler unit is set, and vanilla's
+        // texture is already on unit 0, so switching programs is all that is needed.
+        boolean fullBind = !replayReadyPrograms.containsKey(annotate);
+
+        int drawFb = GL11.glGetInteger(GL30.GL_DRAW_FRAMEBUFFER_BINDING);
+        GL11.glGetIntegerv(GL11.GL_VIEWPORT, REPLAY_VIEWPORT);
+        boolean blend = GL11.glIsEnabled(GL11.GL_BLEND);
+        try {
+            GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, segmentationFbo.fbo);
+            GL11.glViewport(0, 0, segmentationFbo.textureWidth, segmentationFbo.textureHeight);
+            if (blend) GL11.glDisable(GL11.GL_BLEND);
+            if (fullBind) {
+                annotate.addSampler("Sampler0", RenderSystem.getShaderTexture(0));
+                annotate.bind();
+                segProgramBinds++;
+                replayReadyPrograms.put(annotate, Boolean.TRUE);
+            } else {
+                GlStateManager._glUseProgram(annotate.getGlRef());
+            }
+            // Only the matrices and colour that changed since the last draw are uploaded.
+            copyUniform(vanilla, annotate, "ModelViewMat");
+            copyUniform(vanilla, annotate, "ProjMat");
+            copyUniform(vanilla, annotate, "ChunkOffset");
+            applyPendingColourToProgram(annotate, true);
+            GL11.glDrawElements(mode, count, type, 0L);
+            segDrawCalls++;
+        } finally {
+            if (blend) GL11.glEnable(GL11.GL_BLEND);
+            GL11.glViewport(REPLAY_VIEWPORT[0], REPLAY_VIEWPORT[1], REPLAY_VIEWPORT[2], REPLAY_VIEWPORT[3]);
+            GlStateManager._glBindFramebuffer(GlConst.GL_DRAW_FRAMEBUFFER, drawFb);
+            // Vanilla may issue more draws with its program still bound (eg one per chunk). A full bind
+            // also changed the blend state and the active shader, so bind vanilla's back the same way.
+            if (fullBind)
+                vanilla.bind();
+            else
+                GlStateManager._glUseProgram(vanilla.getGlRef());
+        }
+    }
+
+    /** Copy a matrix or vector uniform into the program in use, uploading it only if its value changed. */
+    private static void copyUniform(ShaderProgram from, ShaderProgram to, String name) {
+        GlUniform src = from.getUniform(name);
+        GlUniform dst = to.getUniform(name);
+        if (src == null || dst == null || src.getCount() != dst.getCount()) {
+            return;
+        }
+        float[] values = src.getCount() == 16 ? REPLAY_MAT4 : src.getCount() == 3 ? REPLAY_VEC3 : null;
+        if (values == null || src.getFloatData() == null || dst.getFloatData() == null) {
+            return;
+        }
+        src.getFloatData().get(0, values);
+        FloatBuffer current = dst.getFloatData();
+        boolean changed = false;
+        for (int i = 0; i < values.length && !changed; i++) {
+            changed = current.get(i) != values[i];
+        }
+        if (!changed) {
+            return;
+        }
+        dst.set(values);
+        dst.upload();
+        segUniformUploads++;
+    }
+
     public static Framebuffer getSegmentationFramebuffer() {
         return segmentationFbo;
     }
@@ -1011,11 +1480,88 @@ public class TextureHelper {
      */
     public static void resetSegmentationState() {
         currentEntity = null;
-        currentBlockType = null;
+        currentInstance = 0;
+        instanceChannel = false;
+        lastFrameInstances = List.of();
+        currentBlock = -1;
         drawingBlock = false;
         pendingR = pendingG = pendingB = 0;
         lastBoundTexture = null;
+        segmentationReplay = false;
+        segmentationReplayPaused = false;
+        replayFailureLogged = false;
+        replayReadyPrograms.clear();
+        resetFrameCounters();
+        lastFrameStats = SegmentationFrameStats.EMPTY;
+        segmentationRenderInterval = 1;
+        worldRendersSinceSegmentation = 0;
+        segmentationDueThisFrame = true;
+    }
+
+    /** Counts a draw call issued while the segmentation pass is rendering. */
+    public static void countSegmentationDraw() {
+        segDrawCalls++;
+    }
+
+    private static void resetFrameCounters() {
         segAtlasBinds = segEntityBinds = segOtherBinds = 0;
         segProgramSwapsUV = segProgramSwapsNoUV = 0;
+        segDrawCalls = segProgramBinds = segUniformUploads = 0;
+        frameInstances.clear();
+        frameInstanceIds.clear();
+    }
+
+    private static void endFrameCounters() {
+        segmentationFramesRendered++;
+        lastFrameInstances = instanceChannel ? List.copyOf(frameInstances) : List.of();
+        lastFrameStats = new SegmentationFrameStats(segAtlasBinds, segEntityBinds, segOtherBinds,
+                segProgramSwapsUV, segProgramSwapsNoUV, segDrawCalls, segProgramBinds, segUniformUploads);
+        if (isSegmentationDebugMode()) {
+            logSegmentationStats();
+        }
+    }
+
+    /** Returns the counters of the last completed segmentation frame. */
+    public static SegmentationFrameStats getSegmentationStats() {
+        return lastFrameStats;
+    }
+
+    /** Logs the counters of the last completed segmentation frame. */
+    public static void logSegmentationStats() {
+        LOGGER.info("TextureHelper: seg frame {}", lastFrameStats);
+    }
+
+    /** What the segmentation pass did in one frame. */
+    public static final class SegmentationFrameStats {
+        static final SegmentationFrameStats EMPTY = new SegmentationFrameStats(0, 0, 0, 0, 0, 0, 0, 0);
+
+        public final int atlasBinds;
+        public final int entityBinds;
+        public final int otherBinds;
+        // Annotate programs created for a vertex format, with and without UVs.
+        public final int programSwapsUV;
+        public final int programSwapsNoUV;
+        public final int drawCalls;
+        public final int programBinds;
+        public final int uniformUploads;
+
+        SegmentationFrameStats(int atlasBinds, int entityBinds, int otherBinds, int programSwapsUV,
+                               int programSwapsNoUV, int drawCalls, int programBinds, int uniformUploads) {
+            this.atlasBinds = atlasBinds;
+            this.entityBinds = entityBinds;
+            this.otherBinds = otherBinds;
+            this.programSwapsUV = programSwapsUV;
+            this.programSwapsNoUV = programSwapsNoUV;
+            this.drawCalls = drawCalls;
+            this.programBinds = programBinds;
+            this.uniformUploads = uniformUploads;
+        }
+
+        @Override
+        public String toString() {
+            return "binds -> atlas=" + atlasBinds + " entity=" + entityBinds + " other=" + otherBinds
+                    + ", program swaps -> withUV=" + programSwapsUV + " withoutUV=" + programSwapsNoUV
+                    + ", draws=" + drawCalls + " program binds=" + programBinds + " uniform uploads=" + uniformUploads;
+        }
     }
 }
@@ -0,0 +1,160 @@
+package io.singularitynet.utils;
+
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * Writer that encodes straight into a growable direct buffer as UTF-8, for serialising a message (eg with a
+ * Gson JsonWriter) without building a String and then a byte[] from it.<br>
+ * The buffer is direct so a socket channel can write it as it is, rather than first copying it into a
+ * temporary direct buffer of its own.<br>
+ * Meant to be kept and reused: reset() empties it but keeps the buffer, so a sink that has reached the size
+ * of a typical message stops allocating. Not thread-safe.
+ */
+public class Utf8ByteSink extends Writer
+{
+    private ByteBuffer bytes;   // Written with absolute puts; its position and limit are never moved.
+    private ByteBuffer view;    // Handed out by toByteBuffer.
+    private int count = 0;
+    private char pendingHighSurrogate = 0;  // First half of a surrogate pair split across two writes.
+
+    public Utf8ByteSink(int initialCapacity)
+    {
+        allocate(Math.max(16, initialCapacity));
+    }
+
+    private void allocate(int capacity)
+    {
+        ByteBuffer grown = ByteBuffer.allocateDirect(capacity);
+        if (this.bytes != null)
+            grown.put(0, this.bytes, 0, this.count);
+        this.bytes = grown;
+        this.view = grown.duplicate();
+    }
+
+    /** Discard the contents, keeping the buffer for the next message. */
+    public void reset()
+    {
+        this.count = 0;
+        this.pendingHighSurrogate = 0;
+    }
+
+    /** @return the number of bytes written since the last reset. */
+    public int size()
+    {
+        return this.count;
+    }
+
+    /** @return the sink's direct buffer, positioned over the bytes written so far; only valid until the next write or reset. */
+    public ByteBuffer toByteBuffer()
+    {
+        this.view.limit(this.count).position(0);
+        return this.view;
+    }
+
+    /** @return the number of bytes the sink can hold before it has to grow. */
+    public int capacity()
+    {
+        return this.bytes.capacity();
+    }
+
+    @Override
+    public void write(int c)
+    {
+        ensureCapacity(4);
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len)
+    {
+        // At most three bytes a char - a surrogate pair is four bytes for two chars.
+        ensureCapacity(len * 3 + 1);
+        for (int i = off; i < off + len; i++)
+            encode(cbuf[i]);
+    }
+
+    @Override
+    public void write(String str, int off, int len)
+    {
+        // Overridden so strings aren't first copied into a char array by Writer.
+        ensureCapacity(len * 3 + 1);
+        for (int i = off; i < off + len; i++)
+            encode(str.charAt(i));
+    }
+
+    @Override
+    public Writer append(CharSequence csq)
+    {
+        if (csq == null)
+            csq = "null";
+        return append(csq, 0, csq.length());
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end)
+    {
+        if (csq == null)
+            csq = "null";
+        ensureCapacity((end - start) * 3 + 1);
+        for (int i = start; i < end; i++)
+            encode(csq.charAt(i));
+        return this;
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+
+    private void ensureCapacity(int extra)
+    {
+        if (this.count + extra > this.bytes.capacity())
+            allocate(Math.max(this.bytes.capacity() * 2, this.count + extra));
+    }
+
+    // Caller has made room for at least four more bytes.
+    private void encode(char c)
+    {
+        ByteBuffer b = this.bytes;
+        if (this.pendingHighSurrogate != 0)
+        {
+            char high = this.pendingHighSurrogate;
+            this.pendingHighSurrogate = 0;
+            if (Character.isLowSurrogate(c))
+            {
+                int cp = Character.toCodePoint(high, c);
+                b.put(this.count++, (byte) (0xF0 | (cp >> 18)));
+                b.put(this.count++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+                b.put(this.count++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+                b.put(this.count++, (byte) (0x80 | (cp & 0x3F)));
+                return;
+            }
+            b.put(this.count++, (byte) '?');  // Unpaired surrogate, as String.getBytes would give.
+        }
+        if (c < 0x80)
+        {
+            b.put(this.count++, (byte) c);
+        }
+        else if (c < 0x800)
+        {
+            b.put(this.count++, (byte) (0xC0 | (c >> 6)));
+            b.put(this.count++, (byte) (0x80 | (c & 0x3F)));
+        }
+        else if (Character.isHighSurrogate(c))
+        {
+            this.pendingHighSurrogate = c;
+        }
+        else if (Character.isLowSurrogate(c))
+        {
+            b.put(this.count++, (byte) '?');
+        }
+        else
+        {
+            b.put(this.count++, (byte) (0xE0 | (c >> 12)));
+            b.put(this.count++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+            b.put(this.count++, (byte) (0x80 | (c & 0x3F)));
+        }
+    }
+}
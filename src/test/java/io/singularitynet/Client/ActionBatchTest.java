@@ -0,0 +1,67 @@
+package io.singularitynet.Client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Parsing of "actions [id] verb value; ..." command lines. */
+public class ActionBatchTest
+{
+    @Test
+    void otherCommandsAreNotBatches()
+    {
+        assertNull(ActionBatch.parse("move 1"));
+        assertNull(ActionBatch.parse("actionsfoo 1"));
+        assertNull(ActionBatch.parse("action move 1"));
+    }
+
+    @Test
+    void batchWithId()
+    {
+        ActionBatch batch = ActionBatch.parse("actions 42 move 1; strafe 0;turn 0.5 ; jump 1");
+        assertNotNull(batch);
+        assertEquals(Long.valueOf(42), batch.getId());
+        assertEquals(List.of("move 1", "strafe 0", "turn 0.5", "jump 1"), batch.getCommands());
+    }
+
+    @Test
+    void batchWithoutId()
+    {
+        ActionBatch batch = ActionBatch.parse("  ACTIONS move 1; attack 0");
+        assertNotNull(batch);
+        assertNull(batch.getId());
+        assertEquals(List.of("move 1", "attack 0"), batch.getCommands());
+    }
+
+    @Test
+    void emptyPartsAreSkipped()
+    {
+        ActionBatch batch = ActionBatch.parse("actions 7 ; ;move 1;;");
+        assertNotNull(batch);
+        assertEquals(Long.valueOf(7), batch.getId());
+        assertEquals(List.of("move 1"), batch.getCommands());
+    }
+
+    @Test
+    void idAloneOrNothingIsAnEmptyBatch()
+    {
+        ActionBatch idOnly = ActionBatch.parse("actions 3");
+        assertNotNull(idOnly);
+        assertEquals(Long.valueOf(3), idOnly.getId());
+        assertTrue(idOnly.getCommands().isEmpty());
+
+        ActionBatch nothing = ActionBatch.parse("actions");
+        assertNotNull(nothing);
+        assertNull(nothing.getId());
+        assertTrue(nothing.getCommands().isEmpty());
+    }
+
+    @Test
+    void verbIsLowerCased()
+    {
+        assertEquals("hotbar.2", ActionBatch.verbOf("HotBar.2 1"));
+        assertEquals("jump", ActionBatch.verbOf("jump"));
+    }
+}
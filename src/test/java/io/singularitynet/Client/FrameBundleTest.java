@@ -0,0 +1,89 @@
+package io.singularitynet.Client;
+
+import io.singularitynet.MissionHandlerInterfaces.IVideoProducer;
+import io.singularitynet.projectmalmo.MissionInit;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks that the producers in a bundle are given matching readback depths before they are prepared. */
+public class FrameBundleTest
+{
+    /** Producer that only records its readback depth, as the real producers do in prepare. */
+    private static class FakeProducer implements IVideoProducer
+    {
+        private final VideoType type;
+        private int readbackBuffers;
+        private final boolean adjustable;
+
+        FakeProducer(VideoType type, int readbackBuffers, boolean adjustable)
+        {
+            this.type = type;
+            this.readbackBuffers = readbackBuffers;
+            this.adjustable = adjustable;
+        }
+
+        @Override
+        public VideoType getVideoType() { return this.type; }
+
+        @Override
+        public int getReadbackBuffers() { return this.readbackBuffers; }
+
+        @Override
+        public void setReadbackBuffers(int buffers)
+        {
+            if (this.adjustable)
+                this.readbackBuffers = buffers;
+        }
+
+        @Override
+        public int[] writeFrame(MissionInit missionInit, ByteBuffer buffer) { return new int[2]; }
+
+        @Override
+        public int getWidth() { return 4; }
+
+        @Override
+        public int getHeight() { return 4; }
+
+        @Override
+        public void prepare(MissionInit missionInit) {}
+
+        @Override
+        public void cleanup() {}
+    }
+
+    @Test
+    void mismatchedReadbackDepthsAreRaisedToTheDeepest()
+    {
+        FakeProducer video = new FakeProducer(IVideoProducer.VideoType.VIDEO, 3, true);
+        FakeProducer colourMap = new FakeProducer(IVideoProducer.VideoType.COLOUR_MAP, 1, true);
+        FakeProducer depth = new FakeProducer(IVideoProducer.VideoType.DEPTH_MAP, 0, true);
+
+        assertEquals(3, FrameBundle.normaliseReadbackBuffers(List.of(video, colourMap, depth)));
+        assertEquals(3, video.getReadbackBuffers());
+        assertEquals(3, colourMap.getReadbackBuffers(), "mask would otherwise be two frames ahead of the RGB");
+        assertEquals(3, depth.getReadbackBuffers());
+    }
+
+    @Test
+    void matchingReadbackDepthsAreLeftAlone()
+    {
+        FakeProducer video = new FakeProducer(IVideoProducer.VideoType.VIDEO, 0, false);
+        FakeProducer luminance = new FakeProducer(IVideoProducer.VideoType.LUMINANCE, 0, false);
+
+        assertEquals(0, FrameBundle.normaliseReadbackBuffers(List.of(video, luminance)));
+        assertEquals(0, luminance.getReadbackBuffers());
+    }
+
+    @Test
+    void producerThatCannotMatchIsRejected()
+    {
+        FakeProducer video = new FakeProducer(IVideoProducer.VideoType.VIDEO, 2, true);
+        FakeProducer fixed = new FakeProducer(IVideoProducer.VideoType.COLOUR_MAP, 0, false);
+
+        assertThrows(IllegalArgumentException.class, () -> FrameBundle.normaliseReadbackBuffers(List.of(video, fixed)));
+    }
+}
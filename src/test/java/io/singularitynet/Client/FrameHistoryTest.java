@@ -0,0 +1,82 @@
+package io.singularitynet.Client;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks that frames delivered late by an asynchronous readback are described by the capture they came from. */
+public class FrameHistoryTest
+{
+    /** Readback ring like PixelPackRing: a frame comes back as many captures later as there are buffers. */
+    private static class FakeReadbackRing
+    {
+        private final int buffers;
+        private final ArrayDeque<Long> inFlight = new ArrayDeque<Long>();
+
+        FakeReadbackRing(int buffers)
+        {
+            this.buffers = buffers;
+        }
+
+        /** @return the frame rendered this many captures ago, or null while the ring is still filling. */
+        Long readPixels(long renderedFrame)
+        {
+            this.inFlight.add(renderedFrame);
+            return (this.inFlight.size() > this.buffers) ? this.inFlight.poll() : null;
+        }
+    }
+
+    /**
+     * Capture the given number of frames as VideoHook does, dropping the send of the frames in dropped, and
+     * return the sequence numbers the agent would be given with each frame it receives, paired with the frame it
+     * actually receives.
+     */
+    private static List<long[]> capture(int readbackBuffers, int frames, List<Integer> dropped)
+    {
+        FrameHistory history = new FrameHistory();
+        FakeReadbackRing ring = new FakeReadbackRing(readbackBuffers);
+        List<long[]> sent = new ArrayList<long[]>();
+        for (int frame = 0; frame < frames; frame++)
+        {
+            history.record().sequence = frame;
+            // Dropped frames are read back too; only their send is skipped.
+            Long pixels = ring.readPixels(frame);
+            FrameHistory.FrameState delivered = history.deliver((pixels != null) ? readbackBuffers : 0);
+            if (pixels != null && !dropped.contains(frame))
+                sent.add(new long[] { delivered.sequence, pixels });
+        }
+        return sent;
+    }
+
+    @Test
+    void synchronousReadbackDescribesTheFrameJustCaptured()
+    {
+        for (long[] frame : capture(0, 20, List.of()))
+            assertEquals(frame[1], frame[0]);
+    }
+
+    @Test
+    void dropsDoNotShiftTheSequenceOfLaterFrames()
+    {
+        List<long[]> sent = capture(3, 40, List.of(5, 6, 11, 20));
+        assertEquals(40 - 3 - 4, sent.size());
+        long previous = -1;
+        for (long[] frame : sent)
+        {
+            assertEquals(frame[1], frame[0], "header describes a different frame from the pixels");
+            assertTrue(frame[0] > previous);
+            previous = frame[0];
+        }
+    }
+
+    @Test
+    void deepestLatencyIsStillFound()
+    {
+        for (long[] frame : capture(FrameHistory.MAX_LATENCY, 30, List.of(10, 12, 14)))
+            assertEquals(frame[1], frame[0]);
+    }
+}
@@ -0,0 +1,135 @@
+package io.singularitynet.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Splitting command streams into lines, with lines and characters straddling the blocks they are read in. */
+public class LineScannerTest
+{
+    private static final int BLOCK = 64 * 1024;
+
+    /** Stream that hands out its bytes in reads of at most the given sizes, then of whatever is left. */
+    private static InputStream chunked(byte[] bytes, int... reads)
+    {
+        return new InputStream()
+        {
+            private int position = 0;
+            private int next = 0;
+
+            @Override
+            public int read()
+            {
+                return position < bytes.length ? bytes[position++] & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len)
+            {
+                if (position >= bytes.length)
+                    return -1;
+                int n = Math.min(len, bytes.length - position);
+                if (next < reads.length)
+                    n = Math.min(n, reads[next++]);
+                System.arraycopy(bytes, position, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+    }
+
+    private static List<String> readAll(LineScanner scanner, InputStream in) throws IOException
+    {
+        List<String> lines = new ArrayList<String>();
+        assertTrue(scanner.read(in, line -> lines.add(line)));
+        return lines;
+    }
+
+    @Test
+    void linesInOneBlock() throws IOException
+    {
+        byte[] bytes = "move 1\nturn 0.5\n".getBytes(StandardCharsets.UTF_8);
+        assertEquals(List.of("move 1", "turn 0.5"), readAll(new LineScanner(BLOCK, 1000), new ByteArrayInputStream(bytes)));
+    }
+
+    @Test
+    void lineSplitAcrossBlocks() throws IOException
+    {
+        byte[] bytes = "move 1\nstrafe -0.25\njump 1\n".getBytes(StandardCharsets.UTF_8);
+        // The second line arrives in three reads.
+        List<String> lines = readAll(new LineScanner(BLOCK, 1000), chunked(bytes, 10, 5, 4));
+        assertEquals(List.of("move 1", "strafe -0.25", "jump 1"), lines);
+    }
+
+    @Test
+    void lineLongerThanTheBlock() throws IOException
+    {
+        char[] chars = new char[BLOCK + 100];
+        Arrays.fill(chars, 'x');
+        String longLine = "chat " + new String(chars);
+        byte[] bytes = ("move 1\n" + longLine + "\nturn 1\n").getBytes(StandardCharsets.UTF_8);
+        List<String> lines = readAll(new LineScanner(BLOCK, 10 * BLOCK), new ByteArrayInputStream(bytes));
+        assertEquals(List.of("move 1", longLine, "turn 1"), lines);
+    }
+
+    @Test
+    void multiByteCharacterSplitAtBlockBoundary() throws IOException
+    {
+        // "é" is two bytes and the emoji four; each is cut in half by the read sizes.
+        String text = "chat café 😀\n";
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int e = "chat caf".length();
+        List<String> lines = readAll(new LineScanner(BLOCK, 1000), chunked(bytes, e + 1, 3, 2));
+        assertEquals(List.of("chat café 😀"), lines);
+    }
+
+    @Test
+    void multiByteCharacterSplitAtRealBlockBoundary() throws IOException
+    {
+        // Pad so the two bytes of "é" straddle the end of the first 64K read.
+        char[] padding = new char[BLOCK - "chat ".length() - 1];
+        Arrays.fill(padding, 'a');
+        String line = "chat " + new String(padding) + "é";
+        byte[] bytes = (line + "\n").getBytes(StandardCharsets.UTF_8);
+        assertEquals((byte) 0xC3, bytes[BLOCK - 1]);
+        List<String> lines = readAll(new LineScanner(BLOCK, 10 * BLOCK), new ByteArrayInputStream(bytes));
+        assertEquals(List.of(line), lines);
+    }
+
+    @Test
+    void finalLineWithoutNewlineIsDropped() throws IOException
+    {
+        byte[] bytes = "move 1\nturn 0.5".getBytes(StandardCharsets.UTF_8);
+        assertEquals(List.of("move 1"), readAll(new LineScanner(BLOCK, 1000), chunked(bytes, 8)));
+    }
+
+    @Test
+    void handlerCanStopReading() throws IOException
+    {
+        byte[] bytes = "one\ntwo\nthree\n".getBytes(StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<String>();
+        LineScanner scanner = new LineScanner(BLOCK, 1000);
+        assertFalse(scanner.read(new ByteArrayInputStream(bytes), line -> lines.add(line) && lines.size() < 2));
+        assertEquals(List.of("one", "two"), lines);
+        assertFalse(scanner.isOverlong());
+    }
+
+    @Test
+    void overlongLineStopsReading() throws IOException
+    {
+        byte[] bytes = "short\nthis line is far too long\nmore\n".getBytes(StandardCharsets.UTF_8);
+        List<String> lines = new ArrayList<String>();
+        LineScanner scanner = new LineScanner(8, 16);
+        assertFalse(scanner.read(new ByteArrayInputStream(bytes), line -> lines.add(line)));
+        assertTrue(scanner.isOverlong());
+        assertEquals(List.of("short"), lines);
+    }
+}
@@ -0,0 +1,153 @@
+package io.singularitynet.utils;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Publishes frames into a ring in a temp file and reads them back the way an agent would. */
+public class SharedFrameRingTest
+{
+    private Path dir;
+    private SharedFrameRing ring;
+
+    /** A frame as read out of the file, following the reader protocol in SharedFrameRing's javadoc. */
+    private static class Frame
+    {
+        long sequence;
+        String header;
+        byte[] pixels;
+    }
+
+    @BeforeEach
+    void createDir() throws IOException
+    {
+        this.dir = Files.createTempDirectory("vereya-ring");
+    }
+
+    @AfterEach
+    void cleanUp() throws IOException
+    {
+        if (this.ring != null)
+            this.ring.close();
+        Files.deleteIfExists(this.dir.resolve("frames"));
+        Files.deleteIfExists(this.dir);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+        {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            return map;
+        }
+    }
+
+    private static Frame readSlot(MappedByteBuffer map, long sequence)
+    {
+        int slots = map.getInt(8);
+        int capacity = map.getInt(12);
+        int base = 64 + (int) (sequence % slots) * (32 + capacity);
+        long lock = map.getLong(base);
+        if ((lock & 1) != 0 || map.getLong(base + 8) != sequence)
+            return null;
+        Frame frame = new Frame();
+        frame.sequence = sequence;
+        byte[] header = new byte[map.getInt(base + 16)];
+        frame.pixels = new byte[map.getInt(base + 20)];
+        map.get(base + 32, header);
+        map.get(base + 32 + header.length, frame.pixels);
+        frame.header = new String(header, StandardCharsets.UTF_8);
+        return map.getLong(base) == lock ? frame : null;
+    }
+
+    private static Frame readLatest(Path path) throws IOException
+    {
+        MappedByteBuffer map = map(path);
+        assertEquals(0x52465256, map.getInt(0), "magic");
+        long sequence = map.getLong(16);
+        return sequence < 0 ? null : readSlot(map, sequence);
+    }
+
+    private long publish(String header, int pixelBytes, int fill) throws IOException
+    {
+        byte[] pixels = new byte[pixelBytes];
+        java.util.Arrays.fill(pixels, (byte) fill);
+        return this.ring.publish(ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8)), ByteBuffer.wrap(pixels));
+    }
+
+    @Test
+    void publishedFrameCanBeReadBack() throws IOException
+    {
+        Path path = this.dir.resolve("frames");
+        this.ring = new SharedFrameRing(path, 4, 1024);
+        assertNull(readLatest(path), "no frame before the first publish");
+
+        assertEquals(0, publish("{\"a\":1}", 100, 7));
+        Frame frame = readLatest(path);
+        assertNotNull(frame);
+        assertEquals(0, frame.sequence);
+        assertEquals("{\"a\":1}", frame.header);
+        assertEquals(100, frame.pixels.length);
+        assertEquals(7, frame.pixels[99]);
+        assertEquals(2L, map(path).getLong(64), "seqlock is even and has been through one write");
+    }
+
+    @Test
+    void framesWrapAroundTheSlots() throws IOException
+    {
+        Path path = this.dir.resolve("frames");
+        this.ring = new SharedFrameRing(path, 2, 256);
+        for (int i = 0; i < 5; i++)
+            assertEquals(i, publish("h" + i, 10, i));
+
+        MappedByteBuffer map = map(path);
+        assertEquals(4, map.getLong(16));
+        Frame latest = readSlot(map, 4);
+        assertNotNull(latest);
+        assertEquals("h4", latest.header);
+        assertEquals(4, latest.pixels[0]);
+        Frame previous = readSlot(map, 3);
+        assertNotNull(previous);
+        assertEquals("h3", previous.header);
+        assertNull(readSlot(map, 2), "frame 2 has been overwritten by frame 4");
+        assertEquals(6L, map.getLong(64), "slot 0 written three times");
+    }
+
+    @Test
+    void resizeInvalidatesOldFrames() throws IOException
+    {
+        Path path = this.dir.resolve("frames");
+        this.ring = new SharedFrameRing(path, 3, 64);
+        publish("small", 10, 1);
+        publish("small", 10, 2);
+        int generation = map(path).getInt(24);
+
+        // Too big for a 64 byte slot, so the file is regrown.
+        assertEquals(2, publish("big", 1000, 3));
+        MappedByteBuffer map = map(path);
+        assertTrue(map.getInt(24) != generation, "generation changes on resize");
+        assertTrue(map.getInt(12) >= 1003);
+        Frame frame = readLatest(path);
+        assertNotNull(frame);
+        assertEquals("big", frame.header);
+        assertEquals(1000, frame.pixels.length);
+        // The slots not yet written under the new layout don't match any frame.
+        assertNull(readSlot(map, 0));
+        assertNull(readSlot(map, 1));
+        assertEquals(-1L, map.getLong(64 + 8));
+        assertEquals(-1L, map.getLong(64 + (32 + map.getInt(12)) + 8));
+    }
+}
@@ -0,0 +1,117 @@
+package io.singularitynet.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** The sink's bytes must be exactly what String.getBytes(UTF_8) would give. */
+public class Utf8ByteSinkTest
+{
+    private static byte[] contents(Utf8ByteSink sink)
+    {
+        ByteBuffer buffer = sink.toByteBuffer();
+        assertTrue(buffer.isDirect());
+        assertEquals(sink.size(), buffer.remaining());
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static void assertEncodes(String expected, Utf8ByteSink sink)
+    {
+        assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), contents(sink));
+    }
+
+    @Test
+    void asciiAndMultiByteCharacters()
+    {
+        Utf8ByteSink sink = new Utf8ByteSink(16);
+        String text = "{\"name\":\"Ævar\",\"biome\":\"森林\",\"deg\":\"45°\"}";
+        sink.write(text, 0, text.length());
+        assertEncodes(text, sink);
+    }
+
+    @Test
+    void eachWriteMethodEncodesTheSame()
+    {
+        String text = "a£€😀z";
+        Utf8ByteSink sink = new Utf8ByteSink(16);
+        for (int i = 0; i < text.length(); i++)
+            sink.write(text.charAt(i));
+        assertEncodes(text, sink);
+
+        sink.reset();
+        sink.write(text.toCharArray(), 0, text.length());
+        assertEncodes(text, sink);
+
+        sink.reset();
+        sink.append(text);
+        assertEncodes(text, sink);
+    }
+
+    @Test
+    void surrogatePairSplitAcrossWrites()
+    {
+        String emoji = "😀";
+        Utf8ByteSink sink = new Utf8ByteSink(16);
+        sink.write("x" + emoji.charAt(0), 0, 2);
+        sink.write(emoji.charAt(1) + "y", 0, 2);
+        assertEncodes("x" + emoji + "y", sink);
+        assertEquals(6, sink.size());
+    }
+
+    @Test
+    void unpairedSurrogatesBecomeQuestionMarks()
+    {
+        String text = "a\uD83Db\uDE00c\uD83D";
+        Utf8ByteSink sink = new Utf8ByteSink(16);
+        sink.write(text, 0, text.length());
+        sink.write('d');
+        assertEncodes(text + "d", sink);
+    }
+
+    @Test
+    void growsAndKeepsWhatWasWritten()
+    {
+        Utf8ByteSink sink = new Utf8ByteSink(16);
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+        {
+            String part = i + "é森;";
+            sink.write(part, 0, part.length());
+            expected.append(part);
+        }
+        assertTrue(sink.capacity() >= sink.size());
+        assertEncodes(expected.toString(), sink);
+    }
+
+    @Test
+    void resetKeepsTheBuffer()
+    {
+        Utf8ByteSink sink = new Utf8ByteSink(16);
+        String big = "x".repeat(5000);
+        sink.write(big, 0, big.length());
+        int capacity = sink.capacity();
+        ByteBuffer buffer = sink.toByteBuffer();
+
+        sink.reset();
+        assertEquals(0, sink.size());
+        sink.write("ok", 0, 2);
+        assertEquals(capacity, sink.capacity());
+        assertSame(buffer, sink.toByteBuffer(), "the same buffer is handed out after a reset");
+        assertEncodes("ok", sink);
+    }
+
+    @Test
+    void resetDropsAPendingHighSurrogate()
+    {
+        Utf8ByteSink sink = new Utf8ByteSink(16);
+        sink.write('\uD83D');
+        sink.reset();
+        sink.write('a');
+        assertEncodes("a", sink);
+    }
+}